@@ -28,15 +28,17 @@ import java.io.IOException;
 
 public class Application {
     public static void main(String[] args) throws IOException, InterruptedException, KeeperException {
-        if (args.length != 2) {
-            System.out.println("Expecting parameters <number of workers> <path to worker jar file>");
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Expecting parameters <number of workers> <path to worker jar file> [<number of standby workers>]");
             System.exit(1);
         }
 
         int numberOfWorkers = Integer.parseInt(args[0]);
         String pathToWorkerProgram = args[1];
-        Autohealer autohealer = new Autohealer(numberOfWorkers, pathToWorkerProgram);
+        int numberOfStandbyWorkers = args.length == 3 ? Integer.parseInt(args[2]) : 0;
+        Autohealer autohealer = new Autohealer(numberOfWorkers, pathToWorkerProgram, numberOfStandbyWorkers);
         autohealer.connectToZookeeper();
+        Runtime.getRuntime().addShutdownHook(new Thread(autohealer::destroyStandbys));
         autohealer.startWatchingWorkers();
         autohealer.run();
         autohealer.close();
@@ -26,7 +26,21 @@ import org.apache.zookeeper.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class Autohealer implements Watcher {
 
@@ -36,23 +50,104 @@ public class Autohealer implements Watcher {
     // Parent Znode where each worker stores an ephemeral child to indicate it is alive
     private static final String AUTOHEALER_ZNODES_PATH = "/workers";
 
+    // Parent Znode where each standby worker stores an ephemeral child named after its launch id.
+    // Writing data to that child promotes the standby, it then registers under /workers and starts working
+    private static final String STANDBY_ZNODES_PATH = "/standby";
+
+    // Passed to every launched worker, which puts it into the name of its znode: worker_<launch id>_<sequence>
+    public static final String LAUNCH_ID_PROPERTY = "autohealer.launch.id";
+
+    // Passed to standby workers, which wait for promotion before registering
+    public static final String STANDBY_PROPERTY = "autohealer.standby";
+
+    // Workers are launched with the class data sharing archive built by mvn -Pcds package next to their jar
+    // whenever it exists, unless this is set to false
+    private static final boolean FAST_START = Boolean.parseBoolean(System.getProperty("autohealer.fast.start", "true"));
+
+    // JVM flags that shorten the time from launch to registration. A worker is small and lives short:
+    // the serial collector starts fastest, C1 alone compiles soon enough, and the perf data file is not needed.
+    // -Xshare:auto falls back to loading classes from the jar should the archive not match the jar any more
+    private static final List<String> FAST_START_FLAGS = Arrays.asList(
+            "-Xshare:auto", "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-XX:-UsePerfData");
+
+    // Memory a worker process is expected to take, the standby pool never grows past what the free memory can hold
+    private static final long WORKER_MEMORY_BYTES = Long.getLong("autohealer.worker.memory.mb", 256) * 1024 * 1024;
+
+    // Besides reacting to events, the workers are reconciled on this interval to notice launches that never register
+    private static final long RECONCILE_INTERVAL_MILLIS = 1000;
+
+    // A launched worker that has not registered by then is killed and counted as a crash
+    private static final long REGISTRATION_TIMEOUT_MILLIS = 30000;
+
+    // A worker that dies younger than this counts as a crash, one that lives longer ends a crash loop.
+    // The flaky worker in this repository fails within milliseconds, set this to 0 to heal it without backoff
+    private static final long STABLE_LIFETIME_MILLIS = Long.getLong("autohealer.stable.lifetime.millis", 10000);
+
+    // Workers print on every loop iteration and nobody reads it. Left on a pipe, a worker would block on its next
+    // print once the pipe buffer filled up, with its znode still registered
+    private static final File NULL_DEVICE = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+
+    // After this many reconciliations in a row that found crashed workers, launches are delayed by a backoff
+    // that doubles with every further one. Many workers dying together count once, that is a correlated failure
+    // to heal at full speed, not a crash loop
+    private static final int CRASH_LOOP_THRESHOLD = 3;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
     // Path to the worker jar
     private final String pathToProgram;
 
     // The number of worker instances we need to maintain at all times
     private final int numberOfWorkers;
+
+    // The number of started but idle workers kept ready to replace a dead one without a JVM cold start
+    private final int standbyPoolSize;
     private ZooKeeper zooKeeper;
 
+    private final String launchIdPrefix = Long.toString(System.currentTimeMillis(), 36);
+    private long launchCounter = 0;
+
+    // Launches whose worker has not shown up under /workers yet, by launch id
+    private final Map<String, PendingLaunch> pendingLaunches = new HashMap<>();
+
+    // Standby workers, starting or waiting for promotion, by launch id.
+    // Concurrent, as destroyStandbys reads it from a shutdown hook while a reconciliation may hold the lock
+    private final Map<String, PendingLaunch> standbyLaunches = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    // When each live worker znode was first seen
+    private final Map<String, Long> workerStartTimes = new HashMap<>();
+
+    private int consecutiveCrashes = 0;
+    private boolean crashObserved = false;
+    private long lastCrashTime = 0;
+    private long backoffUntil = 0;
+    private long deficitSince = -1;
+
+    private final ExecutorService launcher = Executors.newCachedThreadPool(daemonThreads("worker-launcher"));
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(daemonThreads("autohealer-reconciler"));
+
     public Autohealer(int numberOfWorkers, String pathToProgram) {
+        this(numberOfWorkers, pathToProgram, 0);
+    }
+
+    public Autohealer(int numberOfWorkers, String pathToProgram, int standbyPoolSize) {
         this.numberOfWorkers = numberOfWorkers;
         this.pathToProgram = pathToProgram;
+        this.standbyPoolSize = standbyPoolSize;
     }
 
     public void startWatchingWorkers() throws KeeperException, InterruptedException {
         if (zooKeeper.exists(AUTOHEALER_ZNODES_PATH, false) == null) {
             zooKeeper.create(AUTOHEALER_ZNODES_PATH, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
         }
+        if (zooKeeper.exists(STANDBY_ZNODES_PATH, false) == null) {
+            zooKeeper.create(STANDBY_ZNODES_PATH, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+        removeUnknownStandbys();
         launchWorkersIfNecessary();
+        reconciler.scheduleWithFixedDelay(this::launchWorkersIfNecessary,
+                RECONCILE_INTERVAL_MILLIS, RECONCILE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     public void connectToZookeeper() throws IOException {
@@ -66,9 +161,40 @@ public class Autohealer implements Watcher {
     }
 
     public void close() throws InterruptedException {
+        reconciler.shutdownNow();
+        launcher.shutdownNow();
+        destroyStandbys();
         zooKeeper.close();
     }
 
+    /*
+        Standbys are idle and only this Autohealer could promote them, so they do not outlive it.
+        Takes no lock, it also runs from a shutdown hook, which System.exit may start while holding it
+     */
+    public void destroyStandbys() {
+        closed = true;
+        for (PendingLaunch standby : standbyLaunches.values()) {
+            if (standby.process != null) {
+                standby.process.destroyForcibly();
+            }
+        }
+    }
+
+    /*
+        Standbys left by an earlier Autohealer would never be promoted by this one.
+        A standby exits once its znode is gone, so deleting the znodes ends them
+     */
+    private void removeUnknownStandbys() throws KeeperException, InterruptedException {
+        for (String launchId : zooKeeper.getChildren(STANDBY_ZNODES_PATH, false)) {
+            try {
+                zooKeeper.delete(STANDBY_ZNODES_PATH + "/" + launchId, -1);
+                System.out.println(String.format("Removed standby worker %s of an earlier autohealer", launchId));
+            } catch (KeeperException.NoNodeException e) {
+                // It exited in the meantime
+            }
+        }
+    }
+
     @Override
     public void process(WatchedEvent event) {
         switch (event.getType()) {
@@ -87,24 +213,251 @@ public class Autohealer implements Watcher {
         }
     }
 
-    private void launchWorkersIfNecessary() {
+    /*
+        Reconciles towards numberOfWorkers in one pass. Launches that have not registered yet count
+        as workers, so a burst of events neither launches twice for the same loss nor waits for one JVM
+        to come up before starting the next. The whole deficit is made up at once, by promoting ready standbys
+        first and launching new processes, in parallel, for the rest. The standby pool is refilled afterwards
+     */
+    private synchronized void launchWorkersIfNecessary() {
         try {
             List<String> children = zooKeeper.getChildren(AUTOHEALER_ZNODES_PATH, this);
-            System.out.println(String.format("Currently there are %d workers", children.size()));
+            List<String> readyStandbys = zooKeeper.getChildren(STANDBY_ZNODES_PATH, this);
+            long now = System.currentTimeMillis();
+            crashObserved = false;
+            trackWorkers(children, now);
+            for (String launchId : readyStandbys) {
+                PendingLaunch standby = standbyLaunches.get(launchId);
+                if (standby != null) {
+                    standby.registered = true;
+                }
+            }
+            expireLaunches(pendingLaunches, now);
+            expireLaunches(standbyLaunches, now);
+            if (crashObserved) {
+                consecutiveCrashes++;
+                lastCrashTime = now;
+            }
+            trackRecovery(children.size(), now);
 
-            if (children.size() < numberOfWorkers) {
-                startNewWorker();
+            if (now < backoffUntil) {
+                return;
+            }
+            int deficit = numberOfWorkers - children.size() - pendingLaunches.size();
+            if (deficit > 0) {
+                System.out.println(String.format("Currently there are %d workers and %d pending launches, replacing %d",
+                        children.size(), pendingLaunches.size(), deficit));
+                int promoted = promoteStandbys(readyStandbys, deficit, now);
+                for (int i = promoted; i < deficit; i++) {
+                    startNewWorker(now, false);
+                }
+            }
+            int standbyDeficit = standbyCapacity() - standbyLaunches.size();
+            for (int i = 0; i < standbyDeficit; i++) {
+                startNewWorker(now, true);
+            }
+            if (deficit > 0 && consecutiveCrashes >= CRASH_LOOP_THRESHOLD) {
+                long backoff = Math.min(MAX_BACKOFF_MILLIS,
+                        BASE_BACKOFF_MILLIS << Math.min(20, consecutiveCrashes - CRASH_LOOP_THRESHOLD));
+                backoffUntil = now + backoff;
+                System.out.println(String.format("Workers are crash looping (%d rounds of crashes in a row), next launch in %d ms",
+                        consecutiveCrashes, backoff));
             }
-        } catch (InterruptedException | KeeperException | IOException e) {
+        } catch (InterruptedException | KeeperException e) {
             e.printStackTrace();
             System.exit(1);
         }
     }
 
-    private void startNewWorker() throws IOException {
+    private void trackWorkers(List<String> children, long now) {
+        Set<String> liveWorkers = new HashSet<>(children);
+        Iterator<Map.Entry<String, Long>> iterator = workerStartTimes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> worker = iterator.next();
+            if (!liveWorkers.contains(worker.getKey())) {
+                iterator.remove();
+                long lifetime = now - worker.getValue();
+                if (lifetime < STABLE_LIFETIME_MILLIS) {
+                    crashObserved = true;
+                }
+            } else if (consecutiveCrashes > 0 && worker.getValue() > lastCrashTime
+                    && now - worker.getValue() >= STABLE_LIFETIME_MILLIS) {
+                System.out.println("Workers are stable again");
+                consecutiveCrashes = 0;
+                backoffUntil = 0;
+            }
+        }
+
+        for (String child : children) {
+            if (workerStartTimes.putIfAbsent(child, now) != null) {
+                continue;
+            }
+            PendingLaunch launch = pendingLaunches.remove(launchIdOf(child));
+            if (launch != null) {
+                System.out.println(String.format("Worker %s registered %d ms after %s",
+                        child, now - launch.launchTime, launch.promoted ? "promotion" : "launch"));
+            }
+        }
+    }
+
+    /*
+        A standby gets the same registration timeout to appear under /standby as a launch to appear under /workers
+     */
+    private void expireLaunches(Map<String, PendingLaunch> launches, long now) {
+        Iterator<PendingLaunch> iterator = launches.values().iterator();
+        while (iterator.hasNext()) {
+            PendingLaunch launch = iterator.next();
+            if (launch.failed || (launch.process != null && !launch.process.isAlive())) {
+                iterator.remove();
+                crashObserved = true;
+            } else if (!launch.registered && now - launch.launchTime > REGISTRATION_TIMEOUT_MILLIS) {
+                System.out.println("Worker did not register in time, killing it");
+                if (launch.process != null) {
+                    launch.process.destroyForcibly();
+                }
+                iterator.remove();
+                crashObserved = true;
+            }
+        }
+    }
+
+    /*
+        Recovery time runs from the first moment workers were seen missing to the moment all of them are back
+     */
+    private void trackRecovery(int liveWorkers, long now) {
+        if (liveWorkers < numberOfWorkers && deficitSince < 0) {
+            deficitSince = now;
+        } else if (liveWorkers >= numberOfWorkers && deficitSince >= 0) {
+            System.out.println(String.format("Recovered to %d workers in %.2f s", liveWorkers, (now - deficitSince) / 1000.0));
+            deficitSince = -1;
+        }
+    }
+
+    /*
+        Signals up to count ready standbys to register, they become pending launches until their /workers znode
+        appears. Returns how many were promoted
+     */
+    private int promoteStandbys(List<String> readyStandbys, int count, long now) throws InterruptedException, KeeperException {
+        int promoted = 0;
+        for (String launchId : readyStandbys) {
+            if (promoted == count) {
+                break;
+            }
+            PendingLaunch standby = standbyLaunches.remove(launchId);
+            if (standby == null || standby.failed) {
+                continue;
+            }
+            try {
+                zooKeeper.setData(STANDBY_ZNODES_PATH + "/" + launchId, new byte[]{1}, -1);
+            } catch (KeeperException.NoNodeException e) {
+                // The standby died or lost its session since the children were read. A process still running
+                // without its znode can never be promoted, and it would no longer be tracked, so it is killed
+                if (standby.process != null) {
+                    standby.process.destroyForcibly();
+                }
+                continue;
+            }
+            System.out.println(String.format("Promoting standby worker %s", launchId));
+            standby.launchTime = now;
+            standby.promoted = true;
+            standby.registered = false;
+            pendingLaunches.put(launchId, standby);
+            promoted++;
+        }
+        return promoted;
+    }
+
+    /*
+        The configured pool size, as far as the free physical memory allows.
+        Standbys already running are paid for, only new ones have to fit
+     */
+    private int standbyCapacity() {
+        if (standbyPoolSize == 0) {
+            return 0;
+        }
+        com.sun.management.OperatingSystemMXBean operatingSystem =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long affordable = operatingSystem.getFreePhysicalMemorySize() / WORKER_MEMORY_BYTES;
+        return (int) Math.min(standbyPoolSize, standbyLaunches.size() + affordable);
+    }
+
+    private void startNewWorker(long now, boolean standby) {
+        String launchId = launchIdPrefix + "-" + (++launchCounter);
+        PendingLaunch launch = new PendingLaunch(now);
+        (standby ? standbyLaunches : pendingLaunches).put(launchId, launch);
+
         File file = new File(pathToProgram);
-        String command = "java -jar " + file.getName();
-        System.out.println(String.format("Launching worker instance : %s ", command));
-        Runtime.getRuntime().exec(command, null, file.getParentFile());
+        List<String> command = workerCommand(file, launchId, standby, FAST_START);
+        System.out.println(String.format("Launching %s instance : %s ", standby ? "standby worker" : "worker", String.join(" ", command)));
+        launcher.execute(() -> {
+            try {
+                // stdin stays a pipe, a standby exits once this end of it closes with the Autohealer
+                launch.process = new ProcessBuilder(command)
+                        .directory(file.getParentFile())
+                        .redirectErrorStream(true)
+                        .redirectOutput(NULL_DEVICE)
+                        .start();
+                if (standby && closed) {
+                    launch.process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                launch.failed = true;
+            }
+        });
+    }
+
+    /*
+        The command line for a worker, run from the directory of its jar
+     */
+    static List<String> workerCommand(File workerJar, String launchId, boolean standby, boolean fastStart) {
+        List<String> command = new ArrayList<>(Arrays.asList("java", "-D" + LAUNCH_ID_PROPERTY + "=" + launchId));
+        if (standby) {
+            command.add("-D" + STANDBY_PROPERTY + "=true");
+        }
+        File sharedArchive = sharedArchiveOf(workerJar);
+        if (fastStart && sharedArchive.isFile()) {
+            command.add("-XX:SharedArchiveFile=" + sharedArchive.getName());
+            command.addAll(FAST_START_FLAGS);
+        }
+        command.addAll(Arrays.asList("-jar", workerJar.getName()));
+        return command;
+    }
+
+    /*
+        worker.jar comes with worker.jsa
+     */
+    static File sharedArchiveOf(File workerJar) {
+        String name = workerJar.getName();
+        String baseName = name.endsWith(".jar") ? name.substring(0, name.length() - ".jar".length()) : name;
+        return new File(workerJar.getAbsoluteFile().getParentFile(), baseName + ".jsa");
+    }
+
+    /*
+        Workers started by hand register as worker_<sequence> and have no launch id
+     */
+    private static String launchIdOf(String workerZnode) {
+        String[] parts = workerZnode.split("_");
+        return parts.length == 3 ? parts[1] : null;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class PendingLaunch {
+        private long launchTime;
+        private boolean promoted = false;
+        private boolean registered = false;
+        private volatile Process process;
+        private volatile boolean failed = false;
+
+        private PendingLaunch(long launchTime) {
+            this.launchTime = launchTime;
+        }
     }
 }
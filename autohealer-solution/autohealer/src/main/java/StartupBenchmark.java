@@ -0,0 +1,145 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2019 Michael Pogrebinsky - Distributed Systems & Cloud Computing with Java
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Measures the time from launching a worker process to its znode appearing under /workers,
+    with a plain JVM start and with the class data sharing archive and startup flags the Autohealer uses.
+    Needs Zookeeper on localhost:2181, like the workers themselves, and the archive built with
+    mvn -Pcds package in the flakyworker module.
+    Usage: StartupBenchmark <path to worker jar file> [rounds], 10 rounds by default
+ */
+public class StartupBenchmark {
+    private static final String ZOOKEEPER_ADDRESS = "localhost:2181";
+    private static final int SESSION_TIMEOUT = 3000;
+    private static final String AUTOHEALER_ZNODES_PATH = "/workers";
+    private static final int MAX_STARTUP_SECONDS = 30;
+
+    private final File workerJar;
+    private ZooKeeper zooKeeper;
+    private int nextLaunchId = 0;
+
+    private StartupBenchmark(File workerJar) {
+        this.workerJar = workerJar;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Expecting parameters <path to worker jar file> [rounds]");
+            System.exit(1);
+        }
+        File workerJar = new File(args[0]);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        StartupBenchmark benchmark = new StartupBenchmark(workerJar);
+        benchmark.connectToZookeeper();
+        List<Long> plainStarts = benchmark.measure(rounds, false);
+        report("plain start", plainStarts);
+        if (Autohealer.sharedArchiveOf(workerJar).isFile()) {
+            report("fast start", benchmark.measure(rounds, true));
+        } else {
+            System.out.println("No class data sharing archive at " + Autohealer.sharedArchiveOf(workerJar)
+                    + ", run mvn -Pcds package in the flakyworker module to compare");
+        }
+        benchmark.zooKeeper.close();
+    }
+
+    private void connectToZookeeper() throws IOException, InterruptedException, KeeperException {
+        CountDownLatch connected = new CountDownLatch(1);
+        this.zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, SESSION_TIMEOUT, event -> {
+            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        if (zooKeeper.exists(AUTOHEALER_ZNODES_PATH, false) == null) {
+            zooKeeper.create(AUTOHEALER_ZNODES_PATH, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+    }
+
+    /*
+        One worker at a time, so the measurements do not compete for CPU
+     */
+    private List<Long> measure(int rounds, boolean fastStart) throws IOException, InterruptedException, KeeperException {
+        List<Long> startupMillis = new ArrayList<>();
+        for (int i = 0; i < rounds; i++) {
+            String launchId = "benchmark-" + (fastStart ? "fast" : "plain") + "-" + (nextLaunchId++);
+            List<String> command = Autohealer.workerCommand(workerJar, launchId, false, fastStart);
+            if (i == 0) {
+                System.out.println(String.join(" ", command));
+            }
+
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .directory(workerJar.getAbsoluteFile().getParentFile())
+                    .redirectErrorStream(true)
+                    .start();
+            try {
+                awaitRegistration(launchId);
+                startupMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } finally {
+                process.destroyForcibly();
+                process.waitFor();
+            }
+        }
+        return startupMillis;
+    }
+
+    private void awaitRegistration(String launchId) throws InterruptedException, KeeperException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(MAX_STARTUP_SECONDS);
+        while (true) {
+            CountDownLatch childrenChanged = new CountDownLatch(1);
+            List<String> children = zooKeeper.getChildren(AUTOHEALER_ZNODES_PATH, event -> childrenChanged.countDown());
+            for (String child : children) {
+                if (child.startsWith("worker_" + launchId + "_")) {
+                    return;
+                }
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !childrenChanged.await(remaining, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Worker " + launchId + " did not register within " + MAX_STARTUP_SECONDS + " s");
+            }
+        }
+    }
+
+    private static void report(String mode, List<Long> startupMillis) {
+        List<Long> sorted = new ArrayList<>(startupMillis);
+        Collections.sort(sorted);
+        System.out.println(String.format("%-12s launch to registration: min %d ms, median %d ms, max %d ms over %d rounds",
+                mode, sorted.get(0), sorted.get(sorted.size() / 2), sorted.get(sorted.size() - 1), sorted.size()));
+    }
+}
@@ -30,6 +30,13 @@ public class Application {
     public static void main(String[] args) throws IOException, KeeperException, InterruptedException {
         Worker worker = new Worker();
         worker.connectToZookeeper();
+        if (worker.isTrainingRun()) {
+            worker.train();
+            return;
+        }
+        if (worker.isStandby() && !worker.waitForPromotion()) {
+            return;
+        }
         worker.work();
     }
 }
@@ -24,11 +24,14 @@
 
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
 
 import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.LockSupport;
 
 public class Worker {
@@ -38,6 +41,18 @@ public class Worker {
     // Parent Znode where each worker stores an ephemeral child to indicate it is alive
     private static final String AUTOHEALER_ZNODES_PATH = "/workers";
 
+    // Parent Znode where a standby worker waits, under its launch id, until the Autohealer writes to it
+    private static final String STANDBY_ZNODES_PATH = "/standby";
+
+    // Set by the Autohealer that launched this worker, so it can recognize the worker's znode
+    private static final String LAUNCH_ID_PROPERTY = "autohealer.launch.id";
+
+    // Set by the Autohealer when this worker is started as a standby
+    private static final String STANDBY_PROPERTY = "autohealer.standby";
+
+    // Set for the training run that records the classes to put into the class data sharing archive
+    private static final String TRAINING_PROPERTY = "worker.training";
+
     private static final float CHANCE_TO_FAIL = 0.1F;
 
     private final Random random = new Random();
@@ -48,6 +63,85 @@ public class Worker {
         });
     }
 
+    public boolean isTrainingRun() {
+        return Boolean.getBoolean(TRAINING_PROPERTY);
+    }
+
+    /*
+        Goes through the same Zookeeper client code as a real start, so the classes it loads can be archived,
+        but without touching /workers. Works without a Zookeeper server, the request then ends in a connection loss
+     */
+    public void train() throws InterruptedException {
+        try {
+            zooKeeper.exists(AUTOHEALER_ZNODES_PATH, event -> {
+            });
+        } catch (KeeperException e) {
+            System.out.println("Training run finished without Zookeeper: " + e.getMessage());
+        }
+        zooKeeper.close();
+    }
+
+    public boolean isStandby() {
+        return Boolean.getBoolean(STANDBY_PROPERTY) && System.getProperty(LAUNCH_ID_PROPERTY) != null;
+    }
+
+    /*
+        Blocks with the JVM started and the session established, but without a znode under /workers,
+        until the Autohealer promotes this worker by writing to its standby znode. Returns false, with the session
+        closed, when this standby can no longer be promoted: its Autohealer exited, its znode was deleted by another
+        Autohealer, or its session expired and took the znode with it
+     */
+    public boolean waitForPromotion() throws KeeperException, InterruptedException {
+        CountDownLatch standbyEnded = new CountDownLatch(1);
+        AtomicBoolean promoted = new AtomicBoolean(false);
+        watchParent(standbyEnded);
+
+        String standbyZnode = STANDBY_ZNODES_PATH + "/" + System.getProperty(LAUNCH_ID_PROPERTY);
+        zooKeeper.create(standbyZnode, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+
+        byte[] data = zooKeeper.getData(standbyZnode, event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDataChanged) {
+                promoted.set(true);
+                standbyEnded.countDown();
+            } else if (event.getType() == Watcher.Event.EventType.NodeDeleted
+                    || event.getState() == Watcher.Event.KeeperState.Expired) {
+                standbyEnded.countDown();
+            }
+        }, null);
+        // Promoted between the create and setting the watch
+        if (data.length > 0) {
+            promoted.set(true);
+            standbyEnded.countDown();
+        }
+        standbyEnded.await();
+
+        if (!promoted.get()) {
+            System.out.println("Standby is no longer needed, exiting");
+            zooKeeper.close();
+            return false;
+        }
+        System.out.println("Promoted from standby");
+        zooKeeper.delete(standbyZnode, -1);
+        return true;
+    }
+
+    /*
+        The Autohealer holds the other end of a standby's stdin and never writes to it. Reading it returns
+        the end of the stream once that end is closed, which happens whenever the Autohealer exits, even when killed
+     */
+    private void watchParent(CountDownLatch standbyEnded) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (System.in.read() != -1) {
+                }
+            } catch (IOException ignored) {
+            }
+            standbyEnded.countDown();
+        }, "parent-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     public void work() throws KeeperException, InterruptedException {
         addChildZnode();
 
@@ -62,7 +156,9 @@ public class Worker {
     }
 
     private void addChildZnode() throws KeeperException, InterruptedException {
-        zooKeeper.create(AUTOHEALER_ZNODES_PATH + "/worker_",
+        String launchId = System.getProperty(LAUNCH_ID_PROPERTY);
+        String prefix = launchId != null ? "/worker_" + launchId + "_" : "/worker_";
+        zooKeeper.create(AUTOHEALER_ZNODES_PATH + prefix,
                 new byte[]{},
                 ZooDefs.Ids.OPEN_ACL_UNSAFE,
                 CreateMode.EPHEMERAL_SEQUENTIAL);
@@ -0,0 +1,245 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import computation.FactorTokenizer;
+import computation.PayloadTooLargeException;
+import networking.ConsistentHashRing;
+import networking.RequestPolicy;
+import networking.TaskResult;
+import org.apache.zookeeper.KeeperException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/*
+    HTTP front end of the elected leader. Jobs are split over whatever workers the service registry
+    currently knows, so the cluster grows as nodes join the election.
+    POST /job   - one comma separated factor list, multiplied across all workers
+    POST /tasks - one independent factor list per line, each one sent to the least loaded worker,
+                  as measured by this coordinator and as published by the workers in the registry,
+                  answered one result per line in the same order
+    POST /tasks/keyed - same format as /tasks, but each task always goes to the worker owning it
+                  on the consistent hash ring, so repeated tasks hit that worker's warm caches
+*/
+public class Coordinator {
+    private static final String JOB_ENDPOINT = "/job";
+    private static final String TASKS_ENDPOINT = "/tasks";
+    private static final String KEYED_TASKS_ENDPOINT = "/tasks/keyed";
+    private static final String WORKER_TASK_ENDPOINT = "/task";
+    private static final int MAX_FACTOR_LENGTH = 1024 * 1024;
+    private static final long MAX_BODY_SIZE = 64L * 1024 * 1024;
+    private static final int THREADS = 4;
+
+    private final int port;
+    private final ServiceRegistry serviceRegistry;
+    private final Aggregator aggregator;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public Coordinator(int port, ServiceRegistry serviceRegistry) {
+        this.port = port;
+        this.serviceRegistry = serviceRegistry;
+        this.aggregator = new Aggregator();
+    }
+
+    public void start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(JOB_ENDPOINT, this::handleJobRequest);
+        server.createContext(TASKS_ENDPOINT, this::handleTasksRequest);
+        server.createContext(KEYED_TASKS_ENDPOINT, this::handleKeyedTasksRequest);
+        executor = Executors.newFixedThreadPool(THREADS);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Coordinator is listening on port " + port);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void handleJobRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+            exchange.close();
+            return;
+        }
+
+        List<BigInteger> factors = new ArrayList<>();
+        try {
+            FactorTokenizer tokenizer = new FactorTokenizer(exchange.getRequestBody(), MAX_FACTOR_LENGTH, MAX_BODY_SIZE);
+            BigInteger factor;
+            while ((factor = tokenizer.nextFactor()) != null) {
+                factors.add(factor);
+            }
+        } catch (PayloadTooLargeException e) {
+            sendResponse((e.getMessage() + "\n").getBytes(), exchange, 413);
+            return;
+        } catch (NumberFormatException e) {
+            sendResponse(("Invalid factor: " + e.getMessage() + "\n").getBytes(), exchange, 400);
+            return;
+        }
+
+        List<String> workers = getWorkerTaskAddresses();
+        if (workers.isEmpty()) {
+            sendNoWorkers(exchange);
+            return;
+        }
+
+        try {
+            BigInteger result = aggregator.multiplyAcrossWorkers(workers, factors);
+            sendResponse(String.format("Result of the multiplication is %s\n", result).getBytes(), exchange, 200);
+        } catch (CompletionException e) {
+            sendResponse(("Workers failed: " + e.getCause().getMessage() + "\n").getBytes(), exchange, 502);
+        }
+    }
+
+    private void handleTasksRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+            exchange.close();
+            return;
+        }
+
+        List<String> tasks = readTasks(exchange);
+        if (tasks == null) {
+            return;
+        }
+        Map<String, Double> workers = getWorkerTaskLoads();
+        if (workers.isEmpty()) {
+            sendNoWorkers(exchange);
+            return;
+        }
+
+        try {
+            List<String> results = aggregator.scheduleTasks(workers, tasks);
+            String response = results.stream().map(String::trim).collect(Collectors.joining("\n", "", "\n"));
+            sendResponse(response.getBytes(), exchange, 200);
+        } catch (CompletionException e) {
+            sendResponse(("Workers failed: " + e.getCause().getMessage() + "\n").getBytes(), exchange, 502);
+        }
+    }
+
+    private void handleKeyedTasksRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+            exchange.close();
+            return;
+        }
+
+        List<String> tasks = readTasks(exchange);
+        if (tasks == null) {
+            return;
+        }
+        ConsistentHashRing ring = getRing();
+        if (ring.isEmpty()) {
+            sendNoWorkers(exchange);
+            return;
+        }
+
+        try {
+            List<TaskResult> results = aggregator.sendTasksByKey(ring, WORKER_TASK_ENDPOINT, tasks, RequestPolicy.defaults());
+            String response = results.stream().map(result -> result.getBody().trim()).collect(Collectors.joining("\n", "", "\n"));
+            sendResponse(response.getBytes(), exchange, 200);
+        } catch (CompletionException e) {
+            sendResponse(("Workers failed: " + e.getCause().getMessage() + "\n").getBytes(), exchange, 502);
+        }
+    }
+
+    private ConsistentHashRing getRing() {
+        try {
+            return serviceRegistry.getRing();
+        } catch (KeeperException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ConsistentHashRing.empty();
+    }
+
+    /*
+        Workers register their base address, their work is done by the WebServer /task handler
+    */
+    private List<String> getWorkerTaskAddresses() {
+        try {
+            return serviceRegistry.getAllServiceAddresses().stream()
+                    .map(address -> address + WORKER_TASK_ENDPOINT)
+                    .collect(Collectors.toList());
+        } catch (KeeperException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>();
+    }
+
+    /*
+        The /task address of every worker with the load per core it last published
+    */
+    private Map<String, Double> getWorkerTaskLoads() {
+        Map<String, Double> loads = new LinkedHashMap<>();
+        try {
+            for (WorkerDescriptor worker : serviceRegistry.getAllWorkers()) {
+                loads.put(worker.getAddress() + WORKER_TASK_ENDPOINT, worker.getLoadPerCore());
+            }
+        } catch (KeeperException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return loads;
+    }
+
+    private void sendNoWorkers(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Retry-After", "1");
+        sendResponse("No workers are registered\n".getBytes(), exchange, 503);
+    }
+
+    /*
+        One task per line. Returns null once a body over MAX_BODY_SIZE has been answered with 413
+    */
+    private static List<String> readTasks(HttpExchange exchange) throws IOException {
+        try {
+            return Arrays.asList(new String(readBody(exchange.getRequestBody(), MAX_BODY_SIZE)).split("\n"));
+        } catch (PayloadTooLargeException e) {
+            sendResponse((e.getMessage() + "\n").getBytes(), exchange, 413);
+            return null;
+        }
+    }
+
+    /*
+        Stops reading as soon as the body goes over maxBodySize, like FactorTokenizer does for /job
+    */
+    private static byte[] readBody(InputStream inputStream, long maxBodySize) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            if (body.size() + (long) read > maxBodySize) {
+                throw new PayloadTooLargeException("Request body is larger than " + maxBodySize + " bytes");
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private static void sendResponse(byte[] bytes, HttpExchange exchange, int statusCode) throws IOException {
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(bytes);
+        outputStream.flush();
+        outputStream.close();
+    }
+}
@@ -0,0 +1,255 @@
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Measures how long a cluster is without a leader after the leader goes away, for several cluster sizes.
+    Everything runs in one process: an embedded ZooKeeper server and N LeaderElection participants,
+    each with its own session.
+      crash  - the leader's connection silently stops passing traffic, like a killed process or a dead host,
+               so the successor waits for ZooKeeper to expire the session
+      resign - the leader deletes its own election znode before leaving
+    Usage: FailoverBenchmark [rounds] [cluster sizes...], by default 5 rounds on 3, 5 and 9 participants
+*/
+public class FailoverBenchmark {
+    private static final String ELECTION_NAMESPACE = "/election";
+    private static final int TICK_TIME = 200;
+    private static final int SESSION_TIMEOUT = 3000;
+    private static final int MAX_FAILOVER_SECONDS = 30;
+
+    private final int zooKeeperPort;
+    private final BlockingQueue<Participant> newLeaders = new LinkedBlockingQueue<>();
+    private int nextParticipantId = 0;
+
+    private FailoverBenchmark(int zooKeeperPort) {
+        this.zooKeeperPort = zooKeeperPort;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<Integer> clusterSizes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            clusterSizes.add(Integer.parseInt(args[i]));
+        }
+        if (clusterSizes.isEmpty()) {
+            clusterSizes.addAll(Arrays.asList(3, 5, 9));
+        }
+
+        File dataDirectory = Files.createTempDirectory("failover-benchmark").toFile();
+        ZooKeeperServer zooKeeperServer = new ZooKeeperServer(dataDirectory, dataDirectory, TICK_TIME);
+        ServerCnxnFactory connectionFactory = ServerCnxnFactory.createFactory(new InetSocketAddress("localhost", 0), 1000);
+        connectionFactory.startup(zooKeeperServer);
+
+        FailoverBenchmark benchmark = new FailoverBenchmark(connectionFactory.getLocalPort());
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-14s%-9s%6s%10s%12s%10s", "Cluster size", "handoff", "runs", "min ms", "median ms", "max ms"));
+        try {
+            for (int clusterSize : clusterSizes) {
+                report.add(benchmark.run(clusterSize, rounds, false));
+                report.add(benchmark.run(clusterSize, rounds, true));
+            }
+        } finally {
+            connectionFactory.shutdown();
+            zooKeeperServer.shutdown();
+        }
+
+        System.out.println();
+        System.out.println("Time to new leader, session timeout " + SESSION_TIMEOUT + " ms");
+        report.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    private String run(int clusterSize, int rounds, boolean resign) throws Exception {
+        List<Participant> participants = new ArrayList<>();
+        newLeaders.clear();
+        for (int i = 0; i < clusterSize; i++) {
+            participants.add(startParticipant());
+        }
+        Participant leader = awaitNewLeader();
+
+        List<Long> failoverMillis = new ArrayList<>();
+        long previousEpoch = leader.election.getLeaderEpoch();
+        for (int round = 0; round < rounds; round++) {
+            long stopTime = System.nanoTime();
+            if (resign) {
+                leader.election.resign();
+                leader.close();
+            } else {
+                leader.proxy.blackhole();
+            }
+
+            Participant newLeader = awaitNewLeader();
+            failoverMillis.add(TimeUnit.NANOSECONDS.toMillis(newLeader.electedTime - stopTime));
+            if (newLeader.election.getLeaderEpoch() <= previousEpoch) {
+                throw new IllegalStateException("Epoch went from " + previousEpoch + " to " + newLeader.election.getLeaderEpoch());
+            }
+            previousEpoch = newLeader.election.getLeaderEpoch();
+
+            // Keep the cluster size, the replacement joins at the back of the line
+            leader.close();
+            participants.remove(leader);
+            participants.add(startParticipant());
+            leader = newLeader;
+        }
+
+        for (Participant participant : participants) {
+            participant.close();
+        }
+
+        Collections.sort(failoverMillis);
+        return String.format("%-14d%-9s%6d%10d%12d%10d", clusterSize, resign ? "resign" : "crash", rounds,
+                failoverMillis.get(0), failoverMillis.get(failoverMillis.size() / 2), failoverMillis.get(failoverMillis.size() - 1));
+    }
+
+    private Participant awaitNewLeader() throws InterruptedException {
+        Participant leader = newLeaders.poll(MAX_FAILOVER_SECONDS, TimeUnit.SECONDS);
+        if (leader == null) {
+            throw new IllegalStateException("No leader was elected within " + MAX_FAILOVER_SECONDS + " s");
+        }
+        return leader;
+    }
+
+    private Participant startParticipant() throws IOException, KeeperException, InterruptedException {
+        BlackholeProxy proxy = new BlackholeProxy(zooKeeperPort);
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper zooKeeper = new ZooKeeper("localhost:" + proxy.getPort(), SESSION_TIMEOUT, event -> {
+            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+
+        try {
+            zooKeeper.create(ELECTION_NAMESPACE, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException ignored) {}
+
+        Participant participant = new Participant(nextParticipantId++, proxy, zooKeeper);
+        participant.election.volunteerForLeadership();
+        participant.election.electLeader();
+        return participant;
+    }
+
+    private class Participant implements OnElectionCallback {
+        private final int id;
+        private final BlackholeProxy proxy;
+        private final ZooKeeper zooKeeper;
+        private final LeaderElection election;
+        private volatile long electedTime;
+
+        private Participant(int id, BlackholeProxy proxy, ZooKeeper zooKeeper) {
+            this.id = id;
+            this.proxy = proxy;
+            this.zooKeeper = zooKeeper;
+            this.election = new LeaderElection(zooKeeper, this);
+        }
+
+        @Override
+        public void onElectionToBeLeader() {
+            electedTime = System.nanoTime();
+            newLeaders.add(this);
+        }
+
+        @Override
+        public void onWorker() {
+        }
+
+        private void close() throws InterruptedException {
+            proxy.close();
+            zooKeeper.close(0);
+        }
+
+        @Override
+        public String toString() {
+            return "participant " + id;
+        }
+    }
+
+    /*
+        Forwards a client's connection to ZooKeeper until it is told to drop everything. The sockets stay open,
+        so neither side sees a disconnect and the server only notices once the session times out
+    */
+    private static class BlackholeProxy {
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+        private volatile boolean blackholed = false;
+
+        private BlackholeProxy(int targetPort) throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket client = serverSocket.accept();
+                        Socket server = new Socket("localhost", targetPort);
+                        sockets.add(client);
+                        sockets.add(server);
+                        pump(client, server);
+                        pump(server, client);
+                    }
+                } catch (IOException ignored) {
+                    // Closed
+                }
+            }, "blackhole-proxy-" + serverSocket.getLocalPort());
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void blackhole() {
+            blackholed = true;
+        }
+
+        private void pump(Socket from, Socket to) {
+            Thread pump = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try (InputStream input = from.getInputStream(); OutputStream output = to.getOutputStream()) {
+                    int read;
+                    while ((read = input.read(buffer)) != -1) {
+                        if (!blackholed) {
+                            output.write(buffer, 0, read);
+                            output.flush();
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // One side went away
+                }
+            });
+            pump.setDaemon(true);
+            pump.start();
+        }
+
+        private void close() {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {}
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -3,14 +3,33 @@ import org.apache.zookeeper.data.Stat;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LeaderElection implements Watcher {
     private static final String ZOOKEEPER_ADDRESS = "localhost:2181";
     private static final int DEFAULT_PORT = 8080;
     private static final String ELECTION_NAMESPACE = "/election";
     private static final String TARGET_ZNODE = "/target_znode";
-    private String currentZnodeName;
+    private static final String EPOCH_ZNODE = "/election_epoch";
+    // Cleared by resign() on another thread, so every use reads it once into a local
+    private volatile String currentZnodeName;
+    private volatile long leaderEpoch = -1;
     private final OnElectionCallback onElectionCallback;
+    private final ExecutorService watchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "leader-election-watches");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+    private final AtomicLong handledEvents = new AtomicLong();
+    private final AtomicLong mergedEvents = new AtomicLong();
+    private final AtomicLong totalEventDelay = new AtomicLong();
+    private final AtomicLong maxEventDelay = new AtomicLong();
 
     public LeaderElection(ZooKeeper zooKeeper, OnElectionCallback onElectionCallback) {
         this.zooKeeper = zooKeeper;
@@ -28,20 +47,54 @@ public class LeaderElection implements Watcher {
         this.zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, SESSION_TIMEOUT, this);
     }
 
+    /*
+        Runs on the ZooKeeper client's only event thread, so it must never block. Session events are handled here
+        right away and go no further, there is nothing to re-read for them. Node events, which need round trips,
+        go to the watch executor. An event whose type and path are already waiting there is merged into the waiting one,
+        since a single re-read covers both
+    */
     @Override
     public void process(WatchedEvent watchedEvent) {
-        switch (watchedEvent.getType()) {
-            case None:
-                if (watchedEvent.getState() == Event.KeeperState.SyncConnected) {
-                    System.out.println("Successfully connected to Zookeeper");
-                } else {
-                    synchronized (zooKeeper) {
-                        System.out.println("Disconnected from Zookeeper event");
-                        // wakes up all threads in wait state (in this case the main thread)
-                        zooKeeper.notifyAll();
-                    }
+        if (watchedEvent.getType() == Event.EventType.None) {
+            if (watchedEvent.getState() == Event.KeeperState.SyncConnected) {
+                System.out.println("Successfully connected to Zookeeper");
+            } else {
+                synchronized (zooKeeper) {
+                    System.out.println("Disconnected from Zookeeper event");
+                    // wakes up all threads in wait state (in this case the main thread)
+                    zooKeeper.notifyAll();
                 }
-                break;
+            }
+            return;
+        }
+
+        String key = watchedEvent.getType() + " " + watchedEvent.getPath();
+        boolean[] scheduled = {false};
+        pendingEvents.compute(key, (eventKey, pending) -> {
+            if (pending != null) {
+                pending.merged++;
+                return pending;
+            }
+            scheduled[0] = true;
+            return new PendingEvent(watchedEvent, System.nanoTime());
+        });
+
+        if (scheduled[0]) {
+            try {
+                watchExecutor.execute(() -> handleEvent(key));
+            } catch (RejectedExecutionException e) {
+                // Closed
+                pendingEvents.remove(key);
+            }
+        }
+    }
+
+    private void handleEvent(String key) {
+        // Removed before handling, so an event arriving meanwhile triggers another re-read
+        PendingEvent pending = pendingEvents.remove(key);
+        WatchedEvent watchedEvent = pending.event;
+
+        switch (watchedEvent.getType()) {
             case NodeCreated:
                 System.out.println(TARGET_ZNODE + " was created");
                 break;
@@ -57,18 +110,36 @@ public class LeaderElection implements Watcher {
             case NodeChildrenChanged:
                 System.out.println(TARGET_ZNODE + " children changed");
                 break;
+            default:
+                break;
         }
 
         // After an update get all up to date data and print
-        try {
-            watchTargetZnode();
-        } catch (KeeperException | InterruptedException ignored) {}
-
         try {
             // Do some work here!
             watchTargetZnode();
             System.out.println("Hello world");
         } catch (KeeperException | InterruptedException ignored) {}
+
+        long delay = System.nanoTime() - pending.receivedTime;
+        handledEvents.incrementAndGet();
+        mergedEvents.addAndGet(pending.merged);
+        totalEventDelay.addAndGet(delay);
+        maxEventDelay.accumulateAndGet(delay, Math::max);
+    }
+
+    public long getHandledEvents() {
+        return handledEvents.get();
+    }
+
+    public long getMergedEvents() {
+        return mergedEvents.get();
+    }
+
+    public String describeEventStats() {
+        long handled = handledEvents.get();
+        return String.format("%d watch events handled, %d merged, event to handled delay mean %.2f ms, max %.2f ms",
+                handled, mergedEvents.get(), handled == 0 ? 0 : totalEventDelay.get() / 1e6 / handled, maxEventDelay.get() / 1e6);
     }
 
     /*
@@ -81,9 +152,11 @@ public class LeaderElection implements Watcher {
     }
 
     public void close() throws InterruptedException {
+        watchExecutor.shutdown();
         synchronized (zooKeeper) {
             zooKeeper.close();
         }
+        System.out.println(describeEventStats());
     }
 
     /*
@@ -98,20 +171,30 @@ public class LeaderElection implements Watcher {
     }
 
     public void electLeader() throws KeeperException, InterruptedException {
-        List<String> children = zooKeeper.getChildren(ELECTION_NAMESPACE, false);
-        Collections.sort(children);
-
+        String ownZnodeName = currentZnodeName;
+        if (ownZnodeName == null) {
+            // Resigned
+            return;
+        }
         String predecessorZnodeName = "";
         Stat predecessorStat = null;
         while (predecessorStat == null) {
+            List<String> children = zooKeeper.getChildren(ELECTION_NAMESPACE, false);
+            Collections.sort(children);
+            if (Collections.binarySearch(children, ownZnodeName) < 0) {
+                // Resigned, or the session expired, in the meantime
+                return;
+            }
+
             String smallestChild = children.get(0);
-            if (smallestChild.equals(currentZnodeName)) {
-                System.out.println("I am the leader");
+            if (smallestChild.equals(ownZnodeName)) {
+                leaderEpoch = claimEpoch(ownZnodeName);
+                System.out.println("I am the leader, epoch " + leaderEpoch);
                 onElectionCallback.onElectionToBeLeader();
                 return;
             } else {
                 System.out.println("I am not the leader. The current leader is " + smallestChild);
-                int predecessorIndex = Collections.binarySearch(children, currentZnodeName) - 1;
+                int predecessorIndex = Collections.binarySearch(children, ownZnodeName) - 1;
                 predecessorZnodeName = children.get(predecessorIndex);
                 /*
                     .exists() could return null because some time passes after .getChildren()
@@ -125,6 +208,44 @@ public class LeaderElection implements Watcher {
         System.out.println("Watching znode " + predecessorZnodeName);
     }
 
+    /*
+        Fencing token of this leadership. Every setData bumps the znode version atomically, so each new leader
+        gets a larger epoch than all the ones before it, and a deposed leader can be told apart by its older one
+    */
+    private long claimEpoch(String ownZnodeName) throws KeeperException, InterruptedException {
+        try {
+            zooKeeper.create(EPOCH_ZNODE, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException ignored) {}
+        Stat stat = zooKeeper.setData(EPOCH_ZNODE, ownZnodeName.getBytes(), -1);
+        return stat.getVersion();
+    }
+
+    /*
+        Returns -1 while this node is not the leader
+    */
+    public long getLeaderEpoch() {
+        return leaderEpoch;
+    }
+
+    /*
+        Leaves the election by deleting our own znode. The successor is watching it and takes over right away,
+        instead of after the session timeout it would wait for if this process just went away
+    */
+    public void resign() throws InterruptedException {
+        String ownZnodeName = currentZnodeName;
+        if (ownZnodeName == null) {
+            return;
+        }
+        try {
+            zooKeeper.delete(ELECTION_NAMESPACE + "/" + ownZnodeName, -1);
+            System.out.println("Resigned from the election");
+        } catch (KeeperException e) {
+            // Already gone with the session
+        }
+        currentZnodeName = null;
+        leaderEpoch = -1;
+    }
+
     /*
         Watchers that only get triggered once:
             - .exists(path, watcher)
@@ -146,7 +267,7 @@ public class LeaderElection implements Watcher {
     public static void main(String[] args) throws IOException, InterruptedException, KeeperException {
         int currentServicePort = args.length == 1 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
 
-        ServiceRegistry serviceRegistry = new ServiceRegistry();
+        ServiceRegistry serviceRegistry = new ServiceRegistry(currentServicePort);
         OnElectionAction onElectionAction = new OnElectionAction(serviceRegistry, currentServicePort);
 
         LeaderElection leaderElection = new LeaderElection(serviceRegistry.getZookeeper(), onElectionAction);
@@ -159,8 +280,26 @@ public class LeaderElection implements Watcher {
         // Watchers and triggers
         // leaderElection.watchTargetZnode();
 
+        // A planned shutdown hands over leadership at once
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                leaderElection.resign();
+            } catch (InterruptedException ignored) {}
+        }));
+
         leaderElection.run();
         leaderElection.close();
         System.out.println("Disconnected from Zookeeper, exiting application.");
     }
+
+    private static class PendingEvent {
+        private final WatchedEvent event;
+        private final long receivedTime;
+        private int merged = 0;
+
+        private PendingEvent(WatchedEvent event, long receivedTime) {
+            this.event = event;
+            this.receivedTime = receivedTime;
+        }
+    }
 }
@@ -1,10 +1,18 @@
 import org.apache.zookeeper.KeeperException;
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
 
+/*
+    Workers serve the WebServer /task handler on the given port and advertise it in the service registry,
+    together with their load, which WorkerLoadReporter keeps current.
+    The leader leaves the registry, stops working and runs the Coordinator on the same port instead
+*/
 public class OnElectionAction implements OnElectionCallback {
     private final ServiceRegistry serviceRegistry;
     private final int port;
+    private WebServer webServer;
+    private WorkerLoadReporter loadReporter;
+    private Coordinator coordinator;
 
     public OnElectionAction(ServiceRegistry serviceRegistry, int port) {
         this.serviceRegistry = serviceRegistry;
@@ -12,16 +20,51 @@ public class OnElectionAction implements OnElectionCallback {
     }
 
     @Override
-    public void onElectionToBeLeader() throws KeeperException, InterruptedException {
+    public synchronized void onElectionToBeLeader() throws KeeperException, InterruptedException {
         serviceRegistry.unregisterFromCluster();
         serviceRegistry.registerForUpdates();
+
+        if (loadReporter != null) {
+            loadReporter.stop();
+            loadReporter = null;
+        }
+        if (webServer != null) {
+            webServer.stopServer();
+            webServer = null;
+        }
+        if (coordinator == null) {
+            Coordinator candidate = new Coordinator(port, serviceRegistry);
+            try {
+                candidate.start();
+                coordinator = candidate;
+            } catch (IOException e) {
+                // Left unset, so the next election of this node tries again
+                candidate.stop();
+                e.printStackTrace();
+            }
+        }
     }
 
+    /*
+        Called again every time the predecessor goes away and this node is still not the leader,
+        the node is registered and its load reporter started only the first time
+    */
     @Override
-    public void onWorker() {
+    public synchronized void onWorker() {
+        if (loadReporter != null) {
+            return;
+        }
         try {
+            if (webServer == null) {
+                webServer = new WebServer(port, WebServerConfig.fromSystemProperties());
+                webServer.startServer();
+                System.out.println("Worker is listening on port " + port);
+            }
             String currentServerAddress = String.format("http://%s:%d", InetAddress.getLocalHost().getCanonicalHostName(), port);
-            serviceRegistry.registerToCluster(currentServerAddress);
+            WorkerLoadReporter reporter = new WorkerLoadReporter(webServer, serviceRegistry, currentServerAddress);
+            serviceRegistry.registerToCluster(reporter.initialDescriptor().encode());
+            reporter.start();
+            loadReporter = reporter;
         } catch (Exception e) {
             e.printStackTrace();
         }
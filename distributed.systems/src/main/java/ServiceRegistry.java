@@ -1,35 +1,119 @@
+import networking.ConsistentHashRing;
 import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ServiceRegistry implements Watcher {
     private static final String REGISTRY_ZNODE = "/service_registry";
     private static final String ZOOKEEPER_ADDRESS = "localhost:2181";
     private static final int SESSION_TIMEOUT = 3000;
-    private final ZooKeeper zooKeeper;
-    private String currentZnode = null;
-    private List<String> allServiceAddresses = null;
+    // Replaced by a new session when the current one expires, if this registry created it
+    private volatile ZooKeeper zooKeeper;
+    private final boolean ownsZooKeeper;
+    // Null for no snapshot
+    private final Path snapshotFile;
+    private boolean watching = false;
+    private volatile String currentZnode = null;
+    // What our registry znode holds, to register again under a new session
+    private volatile String registeredMetadata = null;
+    private final Map<String, WorkerDescriptor> workersByZnode = new TreeMap<>();
+    private final CountDownLatch initialLoad = new CountDownLatch(1);
+    private volatile List<String> allServiceAddresses = null;
+    private volatile List<WorkerDescriptor> allWorkers = null;
+    private volatile ConsistentHashRing ring = ConsistentHashRing.empty();
+    // Snapshot files are written here rather than on the ZooKeeper event thread, only the latest one pending is written
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "service-registry-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<List<String>> pendingSnapshot = new AtomicReference<>();
 
+    /*
+        Without a node identity there is no snapshot file that co-located nodes would not overwrite for each other,
+        so none is kept
+    */
     public ServiceRegistry(ZooKeeper zooKeeper) {
+        this(zooKeeper, null);
+    }
+
+    /*
+        The snapshot file keeps the last known addresses across restarts, so they are available
+        before ZooKeeper answers, and still there while it cannot be reached
+    */
+    public ServiceRegistry(ZooKeeper zooKeeper, Path snapshotFile) {
         this.zooKeeper = zooKeeper;
+        this.ownsZooKeeper = false;
+        this.snapshotFile = snapshotFile;
         createServiceRegistryZnode();
     }
 
     public ServiceRegistry() throws IOException {
+        this((Path) null);
+    }
+
+    /*
+        For the node serving on port, with a snapshot file of its own
+    */
+    public ServiceRegistry(int port) throws IOException {
+        this(Paths.get("service_registry-" + port + ".snapshot"));
+    }
+
+    /*
+        With a session of its own, which the registry replaces when it expires
+    */
+    public ServiceRegistry(Path snapshotFile) throws IOException {
         this.zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, SESSION_TIMEOUT, this);
+        this.ownsZooKeeper = true;
+        this.snapshotFile = snapshotFile;
+        createServiceRegistryZnode();
     }
 
     public void registerToCluster(String metadata) throws KeeperException, InterruptedException {
         this.currentZnode = zooKeeper.create(REGISTRY_ZNODE + "/n", metadata.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+        this.registeredMetadata = metadata;
+    }
+
+    /*
+        Replaces the data of our registry znode, for workers refreshing their load figures.
+        Asynchronous, the caller is not held up by the round trip
+    */
+    public void updateRegistration(String metadata) {
+        String znode = currentZnode;
+        if (znode == null) {
+            return;
+        }
+        registeredMetadata = metadata;
+        zooKeeper.setData(znode, metadata.getBytes(), -1, (resultCode, path, context, stat) -> {
+            if (resultCode != KeeperException.Code.OK.intValue()) {
+                System.out.println("Could not update " + path + ": " + KeeperException.Code.get(resultCode));
+            }
+        }, null);
     }
 
     public void unregisterFromCluster() throws KeeperException, InterruptedException {
-        if (currentZnode != null && zooKeeper.exists(currentZnode, false) != null) {
-            zooKeeper.delete(currentZnode, -1);
+        String znode = currentZnode;
+        registeredMetadata = null;
+        currentZnode = null;
+        if (znode != null && zooKeeper.exists(znode, false) != null) {
+            zooKeeper.delete(znode, -1);
         }
     }
 
@@ -45,46 +129,305 @@ public class ServiceRegistry implements Watcher {
         }
     }
 
-    public synchronized List<String> getAllServiceAddresses() throws KeeperException, InterruptedException {
+    /*
+        Never blocks on a refresh in progress. Only the very first call, when there is no snapshot to start from,
+        waits for the initial load from ZooKeeper
+    */
+    public List<String> getAllServiceAddresses() throws KeeperException, InterruptedException {
         if (allServiceAddresses == null) {
-            updateAddresses();
+            registerForUpdates();
+            initialLoad.await(SESSION_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        List<String> addresses = allServiceAddresses;
+        return addresses != null ? addresses : Collections.emptyList();
+    }
+
+    /*
+        Same workers as getAllServiceAddresses, with the load figures they last published
+    */
+    public List<WorkerDescriptor> getAllWorkers() throws KeeperException, InterruptedException {
+        if (allWorkers == null) {
+            registerForUpdates();
+            initialLoad.await(SESSION_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        List<WorkerDescriptor> workers = allWorkers;
+        return workers != null ? workers : Collections.emptyList();
+    }
+
+    /*
+        The worker address owning the key on the consistent hash ring of the current members, null without workers.
+        Lock free and allocation free, safe to call on every request
+    */
+    public String route(CharSequence key) {
+        return ring.route(key);
+    }
+
+    /*
+        The ring of the current members. Rebuilt and swapped whenever the membership changes,
+        a caller holding an older ring keeps a consistent view of its own
+    */
+    public ConsistentHashRing getRing() throws KeeperException, InterruptedException {
+        getAllServiceAddresses();
+        return ring;
+    }
+
+    /*
+        Starts from the local snapshot, then sets a persistent recursive watch on the registry and reads it once
+        to catch up. From then on every worker that joins, leaves or changes its data arrives as its own event
+        and is applied on its own, nothing is re-read. The watch is set before the full read,
+        so no change can fall in between
+    */
+    public synchronized void registerForUpdates() {
+        if (watching) {
+            return;
+        }
+        watching = true;
+
+        loadSnapshot();
+        watchRegistry();
+    }
+
+    private void watchRegistry() {
+        zooKeeper.addWatch(REGISTRY_ZNODE, this, AddWatchMode.PERSISTENT_RECURSIVE, (resultCode, path, context) -> {
+            if (resultCode != KeeperException.Code.OK.intValue()) {
+                System.out.println("Could not watch " + REGISTRY_ZNODE + ": " + KeeperException.Code.get(resultCode));
+                synchronized (this) {
+                    watching = false;
+                }
+            }
+        }, null);
+        readAllAddresses();
+    }
+
+    @Override
+    public void process(WatchedEvent watchedEvent) {
+        if (watchedEvent.getType() == Event.EventType.None && watchedEvent.getState() == Event.KeeperState.Expired) {
+            onSessionExpired();
+            return;
+        }
+        String path = watchedEvent.getPath();
+        if (path == null || !path.startsWith(REGISTRY_ZNODE + "/")) {
+            return;
+        }
+        String workerZnode = path.substring(REGISTRY_ZNODE.length() + 1);
+
+        switch (watchedEvent.getType()) {
+            case NodeCreated:
+            case NodeDataChanged:
+                readAddress(workerZnode);
+                break;
+            case NodeDeleted:
+                if (workersByZnode.remove(workerZnode) != null) {
+                    publishAddresses();
+                }
+                break;
+            default:
+                break;
         }
-        return allServiceAddresses;
     }
 
-    private synchronized void updateAddresses() throws KeeperException, InterruptedException {
-        List<String> workerZnodes = zooKeeper.getChildren(REGISTRY_ZNODE, this);
+    /*
+        An expired session is gone for good, together with its persistent watch and our ephemeral registry znode.
+        Runs on the old session's event thread, which delivers nothing after Expired. The new session takes over
+        from here: its requests are queued until it connects, and from then on its event thread owns workersByZnode.
+        Meanwhile the addresses last published, or loaded from the snapshot, keep being served
+    */
+    private void onSessionExpired() {
+        if (!ownsZooKeeper) {
+            System.out.println("The ZooKeeper session of the service registry expired, its owner has to replace it");
+            return;
+        }
+        ZooKeeper expired = zooKeeper;
+        // The old znode went with the session, updates wait for the new one
+        currentZnode = null;
+        try {
+            zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, SESSION_TIMEOUT, this);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            expired.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("The ZooKeeper session of the service registry expired, started a new one");
 
-        List<String> addresses = new ArrayList<>(workerZnodes.size());
+        String metadata = registeredMetadata;
+        if (metadata != null) {
+            zooKeeper.create(REGISTRY_ZNODE + "/n", metadata.getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL,
+                    (resultCode, path, context, name) -> {
+                        if (resultCode == KeeperException.Code.OK.intValue() && registeredMetadata != null) {
+                            currentZnode = name;
+                        } else if (resultCode == KeeperException.Code.OK.intValue()) {
+                            // Unregistered while this was in flight
+                            zooKeeper.delete(name, -1, (deleteResultCode, deletePath, deleteContext) -> {}, null);
+                        } else {
+                            System.out.println("Could not register again: " + KeeperException.Code.get(resultCode));
+                        }
+                    }, null);
+        }
+        synchronized (this) {
+            if (watching) {
+                watchRegistry();
+            }
+        }
+    }
+
+    /*
+        Every callback, like every watch event, runs on the ZooKeeper event thread in the order the requests
+        were sent, so workersByZnode needs no locking
+    */
+    private void readAllAddresses() {
+        zooKeeper.getChildren(REGISTRY_ZNODE, false, this::onChildren, null);
+    }
+
+    private void onChildren(int resultCode, String path, Object context, List<String> workerZnodes) {
+        KeeperException.Code code = KeeperException.Code.get(resultCode);
+        if (code == KeeperException.Code.CONNECTIONLOSS) {
+            readAllAddresses();
+            return;
+        }
+        if (code != KeeperException.Code.OK) {
+            System.out.println("Could not read " + REGISTRY_ZNODE + ": " + code);
+            return;
+        }
+
+        // Entries restored from the snapshot are kept only if the worker is still registered
+        workersByZnode.keySet().retainAll(workerZnodes);
+        List<String> newZnodes = new ArrayList<>();
         for (String workerZnode : workerZnodes) {
-            String workerZnodeFullPath = REGISTRY_ZNODE + "/" + workerZnode;
-            Stat stat = zooKeeper.exists(workerZnodeFullPath, false);
-            if (stat == null) {
-                continue;
+            if (!workersByZnode.containsKey(workerZnode)) {
+                newZnodes.add(workerZnode);
             }
-            byte[] addressBytes = zooKeeper.getData(workerZnodeFullPath, false, stat);
-            String address = new String(addressBytes);
-            addresses.add(address);
         }
 
+        if (newZnodes.isEmpty()) {
+            publishAddresses();
+            return;
+        }
+
+        int[] remaining = {newZnodes.size()};
+        for (String workerZnode : newZnodes) {
+            zooKeeper.getData(REGISTRY_ZNODE + "/" + workerZnode, false, (dataResultCode, dataPath, dataContext, addressBytes, stat) -> {
+                // NONODE means the worker left in the meantime, its NodeDeleted event follows
+                if (dataResultCode == KeeperException.Code.OK.intValue()) {
+                    workersByZnode.put(workerZnode, WorkerDescriptor.parse(new String(addressBytes)));
+                }
+                if (--remaining[0] == 0) {
+                    publishAddresses();
+                }
+            }, null);
+        }
+    }
+
+    private void readAddress(String workerZnode) {
+        zooKeeper.getData(REGISTRY_ZNODE + "/" + workerZnode, false, (resultCode, path, context, addressBytes, stat) -> {
+            if (resultCode == KeeperException.Code.OK.intValue()) {
+                workersByZnode.put(workerZnode, WorkerDescriptor.parse(new String(addressBytes)));
+                publishAddresses();
+            }
+        }, null);
+    }
+
+    /*
+        Load updates arrive far more often than membership changes, the snapshot is only rewritten for the latter
+    */
+    private void publishAddresses() {
+        List<WorkerDescriptor> workers = Collections.unmodifiableList(new ArrayList<>(workersByZnode.values()));
+        List<String> addresses = new ArrayList<>(workers.size());
+        for (WorkerDescriptor worker : workers) {
+            addresses.add(worker.getAddress());
+        }
+        boolean membershipChanged = !addresses.equals(allServiceAddresses);
+
+        if (membershipChanged) {
+            this.ring = ConsistentHashRing.of(addresses);
+        }
+        this.allWorkers = workers;
         this.allServiceAddresses = Collections.unmodifiableList(addresses);
-        System.out.println("The cluster addresses are: " + this.allServiceAddresses);
+        initialLoad.countDown();
+        if (membershipChanged) {
+            System.out.println("The cluster addresses are: " + this.allServiceAddresses);
+            saveSnapshot();
+        }
     }
 
-    @Override
-    public void process(WatchedEvent watchedEvent) {
+    /*
+        One "<znode> <worker descriptor>" line per worker
+    */
+    private void loadSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        List<String> lines;
         try {
-            updateAddresses();
-        } catch (KeeperException | InterruptedException e) {
+            lines = Files.readAllLines(snapshotFile, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+
+        Map<String, WorkerDescriptor> snapshot = new TreeMap<>();
+        for (String line : lines) {
+            int separator = line.indexOf(' ');
+            if (separator > 0) {
+                snapshot.put(line.substring(0, separator), WorkerDescriptor.parse(line.substring(separator + 1)));
+            }
+        }
+        // Handed to the event thread, which owns workersByZnode
+        zooKeeper.exists(REGISTRY_ZNODE, false, (resultCode, path, context, stat) -> {
+            snapshot.forEach(workersByZnode::putIfAbsent);
+        }, null);
+        List<String> addresses = new ArrayList<>(snapshot.size());
+        for (WorkerDescriptor worker : snapshot.values()) {
+            addresses.add(worker.getAddress());
+        }
+        this.ring = ConsistentHashRing.of(addresses);
+        this.allWorkers = Collections.unmodifiableList(new ArrayList<>(snapshot.values()));
+        this.allServiceAddresses = Collections.unmodifiableList(addresses);
+        initialLoad.countDown();
+        System.out.println("Loaded " + snapshot.size() + " addresses from " + snapshotFile);
     }
 
-    public void registerForUpdates() {
+    /*
+        Runs on the event thread, which owns workersByZnode, so the lines are taken here and written by snapshotWriter
+    */
+    private void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(workersByZnode.size());
+        for (Map.Entry<String, WorkerDescriptor> entry : workersByZnode.entrySet()) {
+            lines.add(entry.getKey() + " " + entry.getValue().encode());
+        }
+        if (pendingSnapshot.getAndSet(lines) == null) {
+            snapshotWriter.execute(this::writeSnapshot);
+        }
+    }
+
+    /*
+        Written next to the target and moved over it, so a crash never leaves a half written snapshot
+    */
+    private void writeSnapshot() {
+        List<String> lines = pendingSnapshot.getAndSet(null);
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
         try {
-            updateAddresses();
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        catch (KeeperException | InterruptedException ignored) {}
     }
 
     public ZooKeeper getZookeeper() {
@@ -0,0 +1,100 @@
+import java.util.Locale;
+
+/*
+    What a worker advertises in its registry znode: where to reach it and how busy it is.
+    Encoded as one compact line, "http://host:port;cores=8;inflight=2;queue=0;tput=12.5".
+    A bare address, as older workers register it, parses too, with every load figure unknown (-1)
+*/
+public class WorkerDescriptor {
+    private final String address;
+    private final int cores;
+    private final int inFlight;
+    private final int queueDepth;
+    private final double throughput;
+
+    public WorkerDescriptor(String address, int cores, int inFlight, int queueDepth, double throughput) {
+        this.address = address;
+        this.cores = cores;
+        this.inFlight = inFlight;
+        this.queueDepth = queueDepth;
+        this.throughput = throughput;
+    }
+
+    public static WorkerDescriptor parse(String data) {
+        String[] fields = data.trim().split(";");
+        int cores = -1;
+        int inFlight = -1;
+        int queueDepth = -1;
+        double throughput = -1;
+        for (int i = 1; i < fields.length; i++) {
+            int separator = fields[i].indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String value = fields[i].substring(separator + 1);
+            try {
+                switch (fields[i].substring(0, separator)) {
+                    case "cores":
+                        cores = Integer.parseInt(value);
+                        break;
+                    case "inflight":
+                        inFlight = Integer.parseInt(value);
+                        break;
+                    case "queue":
+                        queueDepth = Integer.parseInt(value);
+                        break;
+                    case "tput":
+                        throughput = Double.parseDouble(value);
+                        break;
+                    default:
+                        // Written by a newer worker
+                        break;
+                }
+            } catch (NumberFormatException ignored) {}
+        }
+        return new WorkerDescriptor(fields[0], cores, inFlight, queueDepth, throughput);
+    }
+
+    public String encode() {
+        return String.format(Locale.ROOT, "%s;cores=%d;inflight=%d;queue=%d;tput=%.1f", address, cores, inFlight, queueDepth, throughput);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /*
+        Tasks completed per second, averaged over the last few seconds
+    */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public boolean hasLoadInformation() {
+        return cores > 0 && inFlight >= 0 && queueDepth >= 0;
+    }
+
+    /*
+        Busy and waiting tasks per core, 0 for an idle worker. Workers without load information count as idle
+    */
+    public double getLoadPerCore() {
+        return hasLoadInformation() ? (double) (inFlight + queueDepth) / cores : 0;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
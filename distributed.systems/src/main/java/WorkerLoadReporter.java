@@ -0,0 +1,90 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Samples the local WebServer and republishes this worker's descriptor in the service registry.
+    Updates are rate limited and only go out when the load moved noticeably,
+    so a steady worker costs ZooKeeper one write every MAX_PUBLISH_INTERVAL_MILLIS at most
+*/
+public class WorkerLoadReporter {
+    private static final long SAMPLE_INTERVAL_MILLIS = 500;
+    private static final long MIN_PUBLISH_INTERVAL_MILLIS = 2000;
+    private static final long MAX_PUBLISH_INTERVAL_MILLIS = 30000;
+    private static final int TASK_COUNT_THRESHOLD = 2;
+    private static final double THROUGHPUT_CHANGE_THRESHOLD = 0.2;
+    private static final double MIN_THROUGHPUT_CHANGE = 1.0;
+    private static final double THROUGHPUT_EWMA_WEIGHT = 0.3;
+
+    private final WebServer webServer;
+    private final ServiceRegistry serviceRegistry;
+    private final String address;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "worker-load-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long lastSampleTime;
+    private long lastCompletedTasks;
+    private double throughput = 0;
+    private WorkerDescriptor lastPublished;
+    private long lastPublishTime;
+
+    public WorkerLoadReporter(WebServer webServer, ServiceRegistry serviceRegistry, String address) {
+        this.webServer = webServer;
+        this.serviceRegistry = serviceRegistry;
+        this.address = address;
+    }
+
+    /*
+        The descriptor to register with, before any sample was taken
+    */
+    public WorkerDescriptor initialDescriptor() {
+        lastSampleTime = System.nanoTime();
+        lastCompletedTasks = webServer.getCompletedTasks();
+        lastPublished = new WorkerDescriptor(address, cores, webServer.getRunningTasks(), webServer.getQueuedTasks(), 0);
+        lastPublishTime = lastSampleTime;
+        return lastPublished;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::sample, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        long completedTasks = webServer.getCompletedTasks();
+        double rate = (completedTasks - lastCompletedTasks) * 1e9 / (now - lastSampleTime);
+        throughput += THROUGHPUT_EWMA_WEIGHT * (rate - throughput);
+        lastSampleTime = now;
+        lastCompletedTasks = completedTasks;
+
+        WorkerDescriptor current = new WorkerDescriptor(address, cores, webServer.getRunningTasks(), webServer.getQueuedTasks(), throughput);
+        long sincePublish = TimeUnit.NANOSECONDS.toMillis(now - lastPublishTime);
+        if (sincePublish < MIN_PUBLISH_INTERVAL_MILLIS) {
+            return;
+        }
+        if (sincePublish < MAX_PUBLISH_INTERVAL_MILLIS && !changedNoticeably(lastPublished, current)) {
+            return;
+        }
+
+        serviceRegistry.updateRegistration(current.encode());
+        lastPublished = current;
+        lastPublishTime = now;
+    }
+
+    private static boolean changedNoticeably(WorkerDescriptor previous, WorkerDescriptor current) {
+        if (Math.abs(current.getInFlight() - previous.getInFlight()) >= TASK_COUNT_THRESHOLD
+                || Math.abs(current.getQueueDepth() - previous.getQueueDepth()) >= TASK_COUNT_THRESHOLD) {
+            return true;
+        }
+        double throughputChange = Math.abs(current.getThroughput() - previous.getThroughput());
+        return throughputChange >= MIN_THROUGHPUT_CHANGE
+                && throughputChange >= THROUGHPUT_CHANGE_THRESHOLD * Math.max(previous.getThroughput(), current.getThroughput());
+    }
+}
@@ -0,0 +1,42 @@
+package benchmarks;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Deterministic benchmark inputs, so results from different builds are comparable
+*/
+final class Factors {
+    private static final long SEED = 42;
+
+    private Factors() {
+    }
+
+    static List<BigInteger> generate(int count, int digits) {
+        Random random = new Random(SEED);
+        List<BigInteger> factors = new ArrayList<>(count);
+        StringBuilder number = new StringBuilder(digits);
+        for (int i = 0; i < count; i++) {
+            number.setLength(0);
+            number.append((char) ('1' + random.nextInt(9)));
+            for (int digit = 1; digit < digits; digit++) {
+                number.append((char) ('0' + random.nextInt(10)));
+            }
+            factors.add(new BigInteger(number.toString()));
+        }
+        return factors;
+    }
+
+    static byte[] toText(List<BigInteger> factors) {
+        StringBuilder body = new StringBuilder();
+        for (BigInteger factor : factors) {
+            if (body.length() > 0) {
+                body.append(',');
+            }
+            body.append(factor);
+        }
+        return body.toString().getBytes();
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import computation.BinaryFormat;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Cost of encoding a result the way the /task handler does, as decimal text or in the binary format
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormattingBenchmark {
+    @Param({"100", "10000", "1000000"})
+    public int resultBits;
+
+    private BigInteger result;
+
+    @Setup
+    public void setUp() {
+        result = new BigInteger(resultBits, new Random(42)).setBit(resultBits - 1);
+    }
+
+    @Benchmark
+    public byte[] text() {
+        return String.format("Result of the multiplication is %s\n", result).getBytes();
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return BinaryFormat.encode(result);
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import computation.MultiplicationMode;
+import computation.ProductAccumulator;
+import computation.ProductCalculator;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    Multiplication strategies, both over a ready list and fed one factor at a time like the /task handler does
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiplicationBenchmark {
+    @Param({"SEQUENTIAL", "PRODUCT_TREE"})
+    public MultiplicationMode mode;
+
+    @Param({"100", "10000"})
+    public int factorCount;
+
+    @Param({"20", "1000"})
+    public int digits;
+
+    private List<BigInteger> factors;
+    private ProductCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        factors = Factors.generate(factorCount, digits);
+        calculator = mode.createCalculator(Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+        A PRODUCT_TREE calculator owns a fork-join pool, which must not outlive its trial
+    */
+    @TearDown
+    public void tearDown() {
+        calculator.shutdown();
+    }
+
+    @Benchmark
+    public BigInteger list() {
+        return calculator.multiply(factors);
+    }
+
+    @Benchmark
+    public BigInteger streaming() {
+        ProductAccumulator accumulator = calculator.newAccumulator();
+        for (BigInteger factor : factors) {
+            accumulator.add(factor);
+        }
+        return accumulator.result();
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import computation.BinaryFormat;
+import computation.FactorReader;
+import computation.FactorTokenizer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+    Cost of turning a /task body into BigInteger factors, in the text and the binary format
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int factorCount;
+
+    @Param({"10", "100", "1000"})
+    public int digits;
+
+    private byte[] textBody;
+    private byte[] binaryBody;
+
+    @Setup
+    public void setUp() {
+        List<BigInteger> factors = Factors.generate(factorCount, digits);
+        textBody = Factors.toText(factors);
+        binaryBody = BinaryFormat.encode(factors);
+    }
+
+    @Benchmark
+    public void text(Blackhole blackhole) throws IOException {
+        drain(new FactorTokenizer(new ByteArrayInputStream(textBody), Integer.MAX_VALUE, Long.MAX_VALUE), blackhole);
+    }
+
+    @Benchmark
+    public void binary(Blackhole blackhole) throws IOException {
+        drain(new BinaryFormat.Reader(new ByteArrayInputStream(binaryBody), Integer.MAX_VALUE, Long.MAX_VALUE), blackhole);
+    }
+
+    private static void drain(FactorReader reader, Blackhole blackhole) throws IOException {
+        BigInteger factor;
+        while ((factor = reader.nextFactor()) != null) {
+            blackhole.consume(factor);
+        }
+    }
+}
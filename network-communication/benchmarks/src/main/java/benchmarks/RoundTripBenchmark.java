@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import loadgen.InProcessWebServer;
+import networking.WebClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+    A full /task round trip over loopback through networking.WebClient against an in-process WebServer.
+    The result cache is disabled so every request is parsed and multiplied
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    @Param({"SUN", "NIO"})
+    public String engine;
+
+    @Param({"2", "1000"})
+    public int factorCount;
+
+    @Param({"20"})
+    public int digits;
+
+    private InProcessWebServer server;
+    private WebClient webClient;
+    private String taskUrl;
+    private byte[] textBody;
+    private List<BigInteger> factors;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty("webserver.engine", engine);
+        System.setProperty("webserver.cache.max.bytes", "0");
+        int port = freePort();
+        server = InProcessWebServer.start(port);
+        webClient = new WebClient();
+        taskUrl = "http://localhost:" + port + "/task";
+        factors = Factors.generate(factorCount, digits);
+        textBody = Factors.toText(factors);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Benchmark
+    public String text() {
+        return webClient.sendTask(taskUrl, textBody).join();
+    }
+
+    @Benchmark
+    public BigInteger binary() {
+        return webClient.sendBinaryTask(taskUrl, factors).join();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
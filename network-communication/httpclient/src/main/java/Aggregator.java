@@ -1,16 +1,42 @@
+import networking.ConsistentHashRing;
+import networking.RequestPolicy;
+import networking.TaskCoalescer;
+import networking.TaskCompletion;
+import networking.TaskPublisher;
+import networking.TaskResult;
 import networking.WebClient;
+import networking.WorkerScheduler;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Aggregator {
+    private static final int MAX_IN_FLIGHT_PER_WORKER = 4;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final Duration BATCH_LINGER_TIME = Duration.ofMillis(2);
+
     private WebClient webClient;
+    private WorkerScheduler workerScheduler;
+    private TaskCoalescer taskCoalescer;
 
     public Aggregator() {
         this.webClient = new WebClient();
+        this.workerScheduler = new WorkerScheduler(webClient, MAX_IN_FLIGHT_PER_WORKER, RequestPolicy.defaults());
+        this.taskCoalescer = new TaskCoalescer(webClient, MAX_BATCH_SIZE, BATCH_LINGER_TIME);
     }
 
+    /*
+        Task i goes to worker i in a single attempt, and whatever the worker answers is returned.
+        Failover and hedging are opt-in through the overload taking a RequestPolicy
+    */
     public List<String> sendTasksToWorkers(List<String> workersAddresses, List<String> tasks) {
         CompletableFuture<String>[] futures = new CompletableFuture[workersAddresses.size()];
         for (int i = 0; i < workersAddresses.size(); i++) {
@@ -22,4 +48,164 @@ public class Aggregator {
 
         return Stream.of(futures).map(CompletableFuture::join).collect(Collectors.toList());
     }
+
+    /*
+        Task i goes to worker i first. When it fails or runs slow, the same task fails over or is hedged
+        to the following workers as the policy allows, so one dead worker can no longer stall the join
+    */
+    public List<TaskResult> sendTasksToWorkers(List<String> workersAddresses, List<String> tasks, RequestPolicy policy) {
+        CompletableFuture<TaskResult>[] futures = new CompletableFuture[workersAddresses.size()];
+        for (int i = 0; i < workersAddresses.size(); i++) {
+            List<String> candidates = new ArrayList<>(workersAddresses);
+            Collections.rotate(candidates, -i);
+            String task = tasks.get(i);
+            byte[] requestPayload = task.getBytes();
+            futures[i] = webClient.sendTask(candidates, requestPayload, policy);
+        }
+
+        return Stream.of(futures).map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    /*
+        Each task goes to the worker owning it on the ring, keyed by the task itself, so a repeated task
+        meets the same worker and its warm caches. Failures fail over along the ring.
+        The ring holds base addresses, endpoint is appended to reach the task handler
+    */
+    public List<TaskResult> sendTasksByKey(ConsistentHashRing ring, String endpoint, List<String> tasks, RequestPolicy policy) {
+        List<CompletableFuture<TaskResult>> futures = new ArrayList<>(tasks.size());
+        for (String task : tasks) {
+            List<String> candidates = ring.preferenceList(task, policy.getMaxAttempts()).stream()
+                    .map(address -> address + endpoint)
+                    .collect(Collectors.toList());
+            futures.add(webClient.sendTask(candidates, task.getBytes(), policy));
+        }
+
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    /*
+        Any number of tasks over any set of workers. Each task goes to the least loaded worker,
+        results come back in task order
+    */
+    public List<String> scheduleTasks(List<String> workersAddresses, List<String> tasks) {
+        workerScheduler.setWorkers(workersAddresses);
+        return submitScheduled(tasks);
+    }
+
+    /*
+        Same as scheduleTasks, with the load per core each worker last published to weigh it
+        before this client has latencies of its own, and on top of them afterwards
+    */
+    public List<String> scheduleTasks(Map<String, Double> loadPerCoreByWorker, List<String> tasks) {
+        workerScheduler.setWorkers(loadPerCoreByWorker);
+        return submitScheduled(tasks);
+    }
+
+    private List<String> submitScheduled(List<String> tasks) {
+        List<byte[]> requestPayloads = tasks.stream().map(String::getBytes).collect(Collectors.toList());
+        return workerScheduler.submitAll(requestPayloads).stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /*
+        For many tiny tasks, where a full HTTP exchange per task costs more than the multiplication.
+        Tasks are spread round robin and coalesced into /tasks/batch requests, the results are the bare products
+    */
+    public List<String> sendSmallTasksToWorkers(List<String> workersAddresses, List<String> tasks) {
+        List<CompletableFuture<String>> futures = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            futures.add(taskCoalescer.submit(workersAddresses.get(i % workersAddresses.size()), tasks.get(i)));
+        }
+        taskCoalescer.flush();
+
+        return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    public TaskCoalescer getTaskCoalescer() {
+        return taskCoalescer;
+    }
+
+    public WorkerScheduler getWorkerScheduler() {
+        return workerScheduler;
+    }
+
+    /*
+        Same routing as sendTasksToWorkers, but the results are published as soon as each one completes,
+        tagged with the task index. Requests are sent as the subscriber requests results, at most maxInFlight at once
+    */
+    public Flow.Publisher<TaskCompletion> streamTasksToWorkers(List<String> workersAddresses, List<String> tasks,
+                                                               RequestPolicy policy, int maxInFlight) {
+        return new TaskPublisher(tasks.size(), maxInFlight, index -> {
+            List<String> candidates = new ArrayList<>(workersAddresses);
+            Collections.rotate(candidates, -(index % workersAddresses.size()));
+            return webClient.sendTask(candidates, tasks.get(index).getBytes(), policy);
+        });
+    }
+
+    public BigInteger multiplyAcrossWorkers(List<String> workersAddresses, List<BigInteger> factors) {
+        return multiplyAcrossWorkers(workersAddresses, factors, ShardingPolicy.adaptive(), RequestPolicy.defaults());
+    }
+
+    /*
+        Scatters the chunks of one large factor list over all workers and multiplies the partial products here.
+        Every worker runs one chunk at a time and takes the next one from a shared queue when it is done,
+        so faster workers end up with more chunks. A failed or slow chunk fails over or is hedged to the other workers.
+        Partial products are merged as a balanced tree while the remaining chunks are still running
+    */
+    public BigInteger multiplyAcrossWorkers(List<String> workersAddresses, List<BigInteger> factors,
+                                            ShardingPolicy shardingPolicy, RequestPolicy policy) {
+        if (workersAddresses.isEmpty()) {
+            throw new IllegalArgumentException("No workers to multiply across");
+        }
+        List<List<BigInteger>> chunks = shardingPolicy.split(factors, workersAddresses.size());
+        if (chunks.isEmpty()) {
+            return BigInteger.ONE;
+        }
+
+        List<CompletableFuture<BigInteger>> partialProducts = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            partialProducts.add(new CompletableFuture<>());
+        }
+        AtomicInteger nextChunk = new AtomicInteger();
+        for (int i = 0; i < Math.min(workersAddresses.size(), chunks.size()); i++) {
+            List<String> candidates = new ArrayList<>(workersAddresses);
+            Collections.rotate(candidates, -i);
+            sendNextChunk(candidates, chunks, partialProducts, nextChunk, policy);
+        }
+
+        return combine(partialProducts, 0, partialProducts.size()).join();
+    }
+
+    /*
+        candidates starts with the worker pulling the chunk, the others are its failover targets.
+        Once a chunk fails for good the chunks nobody took yet fail with it, the result is lost anyway
+    */
+    private void sendNextChunk(List<String> candidates, List<List<BigInteger>> chunks,
+                               List<CompletableFuture<BigInteger>> partialProducts, AtomicInteger nextChunk, RequestPolicy policy) {
+        int chunk = nextChunk.getAndIncrement();
+        if (chunk >= chunks.size()) {
+            return;
+        }
+        webClient.sendBinaryTask(candidates, chunks.get(chunk), policy).whenComplete((product, failure) -> {
+            if (failure != null) {
+                partialProducts.get(chunk).completeExceptionally(failure);
+                int remaining;
+                while ((remaining = nextChunk.getAndIncrement()) < chunks.size()) {
+                    partialProducts.get(remaining).completeExceptionally(failure);
+                }
+                return;
+            }
+            partialProducts.get(chunk).complete(product);
+            sendNextChunk(candidates, chunks, partialProducts, nextChunk, policy);
+        });
+    }
+
+    private static CompletableFuture<BigInteger> combine(List<CompletableFuture<BigInteger>> partialProducts, int from, int to) {
+        if (to - from == 1) {
+            return partialProducts.get(from);
+        }
+        int middle = (from + to) >>> 1;
+        return combine(partialProducts, from, middle).thenCombineAsync(combine(partialProducts, middle, to), BigInteger::multiply);
+    }
 }
@@ -0,0 +1,73 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Decides how a single factor list is cut into chunks for the workers.
+    fixed  - every chunk has the same number of factors
+    adaptive - chunks carry roughly the same number of bits, a few chunks per worker so that workers
+               pulling chunks as they finish can balance out, and never less than minChunkBits so tiny tasks
+               are not scattered across the network for nothing
+*/
+public class ShardingPolicy {
+    private static final int DEFAULT_CHUNKS_PER_WORKER = 4;
+    private static final long DEFAULT_MIN_CHUNK_BITS = 64 * 1024;
+
+    private final int factorsPerChunk;
+    private final int chunksPerWorker;
+    private final long minChunkBits;
+
+    private ShardingPolicy(int factorsPerChunk, int chunksPerWorker, long minChunkBits) {
+        this.factorsPerChunk = factorsPerChunk;
+        this.chunksPerWorker = chunksPerWorker;
+        this.minChunkBits = minChunkBits;
+    }
+
+    public static ShardingPolicy fixed(int factorsPerChunk) {
+        return new ShardingPolicy(factorsPerChunk, 0, 0);
+    }
+
+    public static ShardingPolicy adaptive() {
+        return adaptive(DEFAULT_CHUNKS_PER_WORKER, DEFAULT_MIN_CHUNK_BITS);
+    }
+
+    public static ShardingPolicy adaptive(int chunksPerWorker, long minChunkBits) {
+        return new ShardingPolicy(0, chunksPerWorker, minChunkBits);
+    }
+
+    public List<List<BigInteger>> split(List<BigInteger> factors, int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Cannot split factors across " + workerCount + " workers");
+        }
+        if (factorsPerChunk > 0) {
+            List<List<BigInteger>> chunks = new ArrayList<>();
+            for (int from = 0; from < factors.size(); from += factorsPerChunk) {
+                chunks.add(factors.subList(from, Math.min(factors.size(), from + factorsPerChunk)));
+            }
+            return chunks;
+        }
+
+        long totalBits = 0;
+        for (BigInteger factor : factors) {
+            totalBits += factor.bitLength();
+        }
+        long targetChunks = Math.max(1, Math.min((long) workerCount * chunksPerWorker, totalBits / Math.max(1, minChunkBits)));
+        long bitsPerChunk = Math.max(1, totalBits / targetChunks);
+
+        List<List<BigInteger>> chunks = new ArrayList<>();
+        int chunkStart = 0;
+        long chunkBits = 0;
+        for (int i = 0; i < factors.size(); i++) {
+            chunkBits += factors.get(i).bitLength();
+            if (chunkBits >= bitsPerChunk && chunks.size() < targetChunks - 1) {
+                chunks.add(factors.subList(chunkStart, i + 1));
+                chunkStart = i + 1;
+                chunkBits = 0;
+            }
+        }
+        if (chunkStart < factors.size()) {
+            chunks.add(factors.subList(chunkStart, factors.size()));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,26 @@
+package loadgen;
+
+/*
+    WebServer lives in the unnamed package of the httpserver module, which named packages cannot import,
+    so it is driven reflectively. The configuration comes from the webserver.* system properties.
+    Shared by the load generator and the benchmarks
+*/
+public final class InProcessWebServer {
+    private final Object webServer;
+
+    private InProcessWebServer(Object webServer) {
+        this.webServer = webServer;
+    }
+
+    public static InProcessWebServer start(int port) throws ReflectiveOperationException {
+        Class<?> configClass = Class.forName("WebServerConfig");
+        Object config = configClass.getMethod("fromSystemProperties").invoke(null);
+        Object webServer = Class.forName("WebServer").getConstructor(int.class, configClass).newInstance(port, config);
+        webServer.getClass().getMethod("startServer").invoke(webServer);
+        return new InProcessWebServer(webServer);
+    }
+
+    public void stop() throws ReflectiveOperationException {
+        webServer.getClass().getMethod("stopServer").invoke(webServer);
+    }
+}
@@ -0,0 +1,232 @@
+package loadgen;
+
+import metrics.LatencyHistogram;
+import networking.WebClient;
+import networking.WorkerResponseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Drives a worker's /task endpoint through networking.WebClient and reports throughput and latency percentiles.
+    Run it with the httpclient and httpserver classes on the classpath:
+    java -Dloadgen.mode=open -Dloadgen.rate=200 -cp httpclient/target/classes:httpserver/target/classes loadgen.LoadGenerator
+    Requests sent during the warmup are not reported
+*/
+public class LoadGenerator {
+    private final LoadGeneratorConfig config;
+    private final WebClient webClient;
+    private final List<byte[]> payloads;
+
+    public LoadGenerator(LoadGeneratorConfig config) {
+        this.config = config;
+        this.webClient = new WebClient();
+        this.payloads = generatePayloads(config);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGeneratorConfig config = LoadGeneratorConfig.fromSystemProperties();
+        InProcessWebServer webServer = config.getInProcessPort() != 0 ? InProcessWebServer.start(config.getInProcessPort()) : null;
+        try {
+            LoadReport report = new LoadGenerator(config).run();
+            System.out.print(report.summary());
+        } finally {
+            if (webServer != null) {
+                webServer.stop();
+            }
+        }
+    }
+
+    public LoadReport run() throws InterruptedException {
+        System.out.println(String.format("Load test against %s: %s loop, %s, %d s warmup, %d s measured, factors %s x %s digits",
+                config.getTarget(), config.getMode().name().toLowerCase(), describeLoad(),
+                config.getWarmupSeconds(), config.getDurationSeconds(), config.getFactorCount(), config.getFactorDigits()));
+        return config.getMode() == LoadGeneratorConfig.LoadMode.OPEN ? runOpenLoop() : runClosedLoop();
+    }
+
+    private String describeLoad() {
+        if (config.getMode() == LoadGeneratorConfig.LoadMode.OPEN) {
+            return config.getRate() + " req/s";
+        }
+        return config.getConcurrency() + " clients" + (config.getRate() > 0 ? " paced at " + config.getRate() + " req/s" : "");
+    }
+
+    /*
+        Each client waits for its response before sending again, so a stalled server also stalls the load.
+        With a rate, every client follows its own schedule and latency is measured from the scheduled time.
+        Without one, each measured latency is backfilled with the requests the client would have sent meanwhile,
+        assuming it would have sent one every warmup mean service time
+    */
+    private LoadReport runClosedLoop() throws InterruptedException {
+        LoadReport report = new LoadReport();
+        LatencyHistogram warmupServiceTime = new LatencyHistogram();
+        AtomicLong expectedInterval = new AtomicLong(-1);
+        long startTime = System.nanoTime();
+        long measureStart = startTime + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        long endTime = measureStart + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        long pacingInterval = config.getRate() > 0 ? (long) (1e9 * config.getConcurrency() / config.getRate()) : 0;
+
+        List<Thread> clients = new ArrayList<>(config.getConcurrency());
+        for (int client = 0; client < config.getConcurrency(); client++) {
+            Random random = new Random(config.getSeed() + client);
+            long firstSend = startTime + pacingInterval * client / config.getConcurrency();
+            Thread thread = new Thread(() -> {
+                long intendedTime = firstSend;
+                while (true) {
+                    if (pacingInterval > 0) {
+                        sleepUntil(intendedTime);
+                    } else {
+                        intendedTime = System.nanoTime();
+                    }
+                    if (intendedTime - endTime >= 0) {
+                        return;
+                    }
+
+                    long sendTime = System.nanoTime();
+                    String failure = send(payloads.get(random.nextInt(payloads.size())));
+                    long finishTime = System.nanoTime();
+
+                    if (intendedTime - measureStart < 0) {
+                        if (failure == null) {
+                            warmupServiceTime.record(finishTime - sendTime);
+                        }
+                    } else if (failure != null) {
+                        report.recordFailure(failure);
+                    } else if (pacingInterval > 0) {
+                        report.recordSuccess(finishTime - sendTime, finishTime - intendedTime);
+                    } else {
+                        expectedInterval.compareAndSet(-1, warmupServiceTime.getMeanNanos());
+                        report.recordSuccessCorrected(finishTime - sendTime, expectedInterval.get());
+                    }
+                    intendedTime += pacingInterval;
+                }
+            }, "loadgen-client-" + client);
+            thread.start();
+            clients.add(thread);
+        }
+
+        for (Thread client : clients) {
+            client.join();
+        }
+        report.setElapsedNanos(System.nanoTime() - measureStart);
+
+        if (pacingInterval > 0) {
+            report.setCorrection("is measured from each client's schedule, free of coordinated omission");
+        } else if (expectedInterval.get() > 0) {
+            report.setCorrection(String.format("is corrected for coordinated omission with an expected interval of %.2f ms",
+                    expectedInterval.get() / 1e6));
+        } else {
+            report.setCorrection("is NOT corrected for coordinated omission, set loadgen.rate or loadgen.warmup.seconds");
+        }
+        return report;
+    }
+
+    /*
+        Requests leave on a fixed schedule whether or not earlier ones have returned, and latency runs from
+        the scheduled time. If the generator itself falls behind, or max.outstanding is reached,
+        the delay still shows up in the response time instead of silently lowering the offered load
+    */
+    private LoadReport runOpenLoop() throws InterruptedException {
+        if (config.getRate() <= 0) {
+            throw new IllegalArgumentException("Open loop mode needs loadgen.rate");
+        }
+
+        LoadReport report = new LoadReport();
+        Semaphore outstanding = new Semaphore(config.getMaxOutstanding());
+        Random random = new Random(config.getSeed());
+        Duration timeout = Duration.ofSeconds(config.getTimeoutSeconds());
+        long startTime = System.nanoTime();
+        long measureStart = startTime + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        long endTime = measureStart + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+
+        for (long request = 0; ; request++) {
+            long intendedTime = startTime + (long) (request * 1e9 / config.getRate());
+            if (intendedTime - endTime >= 0) {
+                break;
+            }
+            sleepUntil(intendedTime);
+            outstanding.acquire();
+
+            boolean measured = intendedTime - measureStart >= 0;
+            long sendTime = System.nanoTime();
+            webClient.sendTask(config.getTarget(), payloads.get(random.nextInt(payloads.size())), timeout)
+                    .whenComplete((body, failure) -> {
+                        long finishTime = System.nanoTime();
+                        if (measured) {
+                            if (failure != null) {
+                                report.recordFailure(describe(failure));
+                            } else {
+                                report.recordSuccess(finishTime - sendTime, finishTime - intendedTime);
+                            }
+                        }
+                        outstanding.release();
+                    });
+        }
+
+        if (!outstanding.tryAcquire(config.getMaxOutstanding(), config.getTimeoutSeconds() + 1, TimeUnit.SECONDS)) {
+            report.recordFailure("still outstanding at the end");
+        }
+        report.setElapsedNanos(System.nanoTime() - measureStart);
+        report.setCorrection("is measured from the arrival schedule, free of coordinated omission");
+        return report;
+    }
+
+    /*
+        Returns null on success, otherwise a short description of what went wrong
+    */
+    private String send(byte[] payload) {
+        try {
+            webClient.sendTask(config.getTarget(), payload, Duration.ofSeconds(config.getTimeoutSeconds())).join();
+            return null;
+        } catch (CompletionException exception) {
+            return describe(exception);
+        }
+    }
+
+    private static String describe(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof WorkerResponseException) {
+            return "HTTP " + ((WorkerResponseException) cause).getStatusCode();
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /*
+        A fixed pool of request bodies drawn from the configured distributions, generated up front
+        so building payloads never shows up in the measured latencies
+    */
+    private static List<byte[]> generatePayloads(LoadGeneratorConfig config) {
+        Random random = new Random(config.getSeed());
+        List<byte[]> payloads = new ArrayList<>(config.getPayloadCount());
+        StringBuilder body = new StringBuilder();
+        for (int payload = 0; payload < config.getPayloadCount(); payload++) {
+            body.setLength(0);
+            int factorCount = config.getFactorCount().sample(random);
+            for (int factor = 0; factor < factorCount; factor++) {
+                if (factor > 0) {
+                    body.append(',');
+                }
+                int digits = config.getFactorDigits().sample(random);
+                body.append((char) ('1' + random.nextInt(9)));
+                for (int digit = 1; digit < digits; digit++) {
+                    body.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            payloads.add(body.toString().getBytes());
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,184 @@
+package loadgen;
+
+/*
+    Options of the LoadGenerator, each one overridable with a -Dloadgen.<option> system property,
+    for example -Dloadgen.mode=open -Dloadgen.rate=500
+    mode           - closed: concurrency clients, each sending its next request when the previous one returns
+                     open: requests leave at a fixed rate whatever the server does
+    rate           - requests per second. Required in open mode, optional pacing shared by the clients in closed mode
+    in.process.port - when not 0, a WebServer is started on this port inside the generator and used as the target
+    factor.count, factor.digits - SizeDistribution specs of the factors per task and the digits per factor
+*/
+public class LoadGeneratorConfig {
+    private static final String PROPERTY_PREFIX = "loadgen.";
+
+    private String target = "http://localhost:8081/task";
+    private int inProcessPort = 0;
+    private LoadMode mode = LoadMode.CLOSED;
+    private int concurrency = 16;
+    private double rate = 0;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private SizeDistribution factorCount = SizeDistribution.parse("uniform:2:100");
+    private SizeDistribution factorDigits = SizeDistribution.parse("fixed:20");
+    private int payloadCount = 1024;
+    private long seed = 42;
+    private int timeoutSeconds = 30;
+    private int maxOutstanding = 10_000;
+
+    public enum LoadMode {
+        CLOSED,
+        OPEN
+    }
+
+    public static LoadGeneratorConfig fromSystemProperties() {
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        config.target = property("target", config.target);
+        config.inProcessPort = Integer.parseInt(
+                property("in.process.port", String.valueOf(config.inProcessPort)));
+        config.mode = LoadMode.valueOf(
+                property("mode", config.mode.name()).toUpperCase());
+        config.concurrency = Integer.parseInt(
+                property("concurrency", String.valueOf(config.concurrency)));
+        config.rate = Double.parseDouble(
+                property("rate", String.valueOf(config.rate)));
+        config.durationSeconds = Integer.parseInt(
+                property("duration.seconds", String.valueOf(config.durationSeconds)));
+        config.warmupSeconds = Integer.parseInt(
+                property("warmup.seconds", String.valueOf(config.warmupSeconds)));
+        config.factorCount = SizeDistribution.parse(
+                property("factor.count", config.factorCount.toString()));
+        config.factorDigits = SizeDistribution.parse(
+                property("factor.digits", config.factorDigits.toString()));
+        config.payloadCount = Integer.parseInt(
+                property("payloads", String.valueOf(config.payloadCount)));
+        config.seed = Long.parseLong(
+                property("seed", String.valueOf(config.seed)));
+        config.timeoutSeconds = Integer.parseInt(
+                property("timeout.seconds", String.valueOf(config.timeoutSeconds)));
+        config.maxOutstanding = Integer.parseInt(
+                property("max.outstanding", String.valueOf(config.maxOutstanding)));
+        return config;
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(PROPERTY_PREFIX + name, defaultValue);
+    }
+
+    public String getTarget() {
+        return inProcessPort != 0 ? "http://localhost:" + inProcessPort + "/task" : target;
+    }
+
+    public LoadGeneratorConfig setTarget(String target) {
+        this.target = target;
+        return this;
+    }
+
+    public int getInProcessPort() {
+        return inProcessPort;
+    }
+
+    public LoadGeneratorConfig setInProcessPort(int inProcessPort) {
+        this.inProcessPort = inProcessPort;
+        return this;
+    }
+
+    public LoadMode getMode() {
+        return mode;
+    }
+
+    public LoadGeneratorConfig setMode(LoadMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public LoadGeneratorConfig setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public LoadGeneratorConfig setRate(double rate) {
+        this.rate = rate;
+        return this;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public LoadGeneratorConfig setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public LoadGeneratorConfig setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+        return this;
+    }
+
+    public SizeDistribution getFactorCount() {
+        return factorCount;
+    }
+
+    public LoadGeneratorConfig setFactorCount(SizeDistribution factorCount) {
+        this.factorCount = factorCount;
+        return this;
+    }
+
+    public SizeDistribution getFactorDigits() {
+        return factorDigits;
+    }
+
+    public LoadGeneratorConfig setFactorDigits(SizeDistribution factorDigits) {
+        this.factorDigits = factorDigits;
+        return this;
+    }
+
+    public int getPayloadCount() {
+        return payloadCount;
+    }
+
+    public LoadGeneratorConfig setPayloadCount(int payloadCount) {
+        this.payloadCount = payloadCount;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public LoadGeneratorConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public LoadGeneratorConfig setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+        return this;
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public LoadGeneratorConfig setMaxOutstanding(int maxOutstanding) {
+        this.maxOutstanding = maxOutstanding;
+        return this;
+    }
+}
@@ -0,0 +1,107 @@
+package loadgen;
+
+import metrics.LatencyHistogram;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    What a load run measured. Service time runs from the moment a request was actually sent,
+    response time from the moment it should have been sent according to the schedule, which is
+    what a user arriving at that moment would have waited. Only response time is free of coordinated omission
+*/
+public class LoadReport {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong();
+    private final Map<String, Long> failures = new TreeMap<>();
+    private long elapsedNanos;
+    private String correction = "";
+
+    void recordSuccess(long serviceNanos, long responseNanos) {
+        completed.incrementAndGet();
+        serviceTime.record(serviceNanos);
+        responseTime.record(responseNanos);
+    }
+
+    /*
+        Coordinated omission correction for a load that could not keep its schedule: a request that took
+        several expected intervals delayed the requests that should have been sent meanwhile,
+        so those are recorded too, each with the response time it would have seen
+    */
+    void recordSuccessCorrected(long serviceNanos, long expectedIntervalNanos) {
+        completed.incrementAndGet();
+        serviceTime.record(serviceNanos);
+        responseTime.record(serviceNanos);
+        if (expectedIntervalNanos <= 0) {
+            return;
+        }
+        for (long missed = serviceNanos - expectedIntervalNanos; missed >= expectedIntervalNanos; missed -= expectedIntervalNanos) {
+            responseTime.record(missed);
+        }
+    }
+
+    synchronized void recordFailure(String reason) {
+        failures.merge(reason, 1L, Long::sum);
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    void setCorrection(String correction) {
+        this.correction = correction;
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public synchronized long getFailed() {
+        return failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : completed.get() * 1e9 / elapsedNanos;
+    }
+
+    public LatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    public LatencyHistogram getResponseTime() {
+        return responseTime;
+    }
+
+    public synchronized String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Requests: %d completed, %d failed in %.1f s, throughput %.1f req/s%n",
+                completed.get(), getFailed(), elapsedNanos / 1e9, getThroughput()));
+        failures.forEach((reason, count) -> summary.append(String.format("  %6d x %s%n", count, reason)));
+
+        summary.append(String.format("%-15s", "Latency (ms)"));
+        for (double quantile : QUANTILES) {
+            summary.append(String.format("%10s", "p" + formatQuantile(quantile)));
+        }
+        summary.append(String.format("%10s%10s%n", "max", "mean"));
+        appendRow(summary, "service time", serviceTime);
+        appendRow(summary, "response time", responseTime);
+        summary.append("Response time ").append(correction).append(String.format("%n"));
+        return summary.toString();
+    }
+
+    private static void appendRow(StringBuilder summary, String name, LatencyHistogram recorder) {
+        summary.append(String.format("%-15s", name));
+        for (double quantile : QUANTILES) {
+            summary.append(String.format("%10.2f", recorder.valueAtQuantile(quantile) / 1e6));
+        }
+        summary.append(String.format("%10.2f%10.2f%n", recorder.getMaxNanos() / 1e6, recorder.getMeanNanos() / 1e6));
+    }
+
+    private static String formatQuantile(double quantile) {
+        String percent = String.valueOf(quantile * 100);
+        return percent.endsWith(".0") ? percent.substring(0, percent.length() - 2) : percent;
+    }
+}
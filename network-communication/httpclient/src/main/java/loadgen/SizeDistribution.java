@@ -0,0 +1,80 @@
+package loadgen;
+
+import java.util.Random;
+
+/*
+    Distribution of a positive integer size, parsed from a spec such as
+    fixed:20, uniform:1:100, exponential:50 (mean) or lognormal:50:1.0 (median and sigma)
+*/
+public abstract class SizeDistribution {
+    private final String spec;
+
+    private SizeDistribution(String spec) {
+        this.spec = spec;
+    }
+
+    public abstract int sample(Random random);
+
+    public static SizeDistribution parse(String spec) {
+        String[] parts = spec.trim().toLowerCase().split(":");
+        try {
+            switch (parts[0]) {
+                case "fixed":
+                    int size = positive(parts[1]);
+                    return new SizeDistribution(spec) {
+                        @Override
+                        public int sample(Random random) {
+                            return size;
+                        }
+                    };
+                case "uniform":
+                    int min = positive(parts[1]);
+                    int max = Math.max(min, positive(parts[2]));
+                    return new SizeDistribution(spec) {
+                        @Override
+                        public int sample(Random random) {
+                            return min + random.nextInt(max - min + 1);
+                        }
+                    };
+                case "exponential":
+                    double mean = Double.parseDouble(parts[1]);
+                    return new SizeDistribution(spec) {
+                        @Override
+                        public int sample(Random random) {
+                            return atLeastOne(-mean * Math.log(1 - random.nextDouble()));
+                        }
+                    };
+                case "lognormal":
+                    double mu = Math.log(Double.parseDouble(parts[1]));
+                    double sigma = Double.parseDouble(parts[2]);
+                    return new SizeDistribution(spec) {
+                        @Override
+                        public int sample(Random random) {
+                            return atLeastOne(Math.exp(mu + sigma * random.nextGaussian()));
+                        }
+                    };
+                default:
+                    throw new IllegalArgumentException("Unknown distribution " + parts[0]);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid size distribution '" + spec + "'", exception);
+        }
+    }
+
+    private static int positive(String value) {
+        int size = Integer.parseInt(value);
+        if (size < 1) {
+            throw new NumberFormatException("Sizes must be at least 1, got " + size);
+        }
+        return size;
+    }
+
+    private static int atLeastOne(double value) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(value)));
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
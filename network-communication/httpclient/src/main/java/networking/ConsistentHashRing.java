@@ -0,0 +1,133 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+    Maps task keys to workers so that the same key keeps landing on the same worker, which lets worker-local
+    caches warm up. Every node is placed on the ring virtualNodes times, a key belongs to the first point
+    clockwise from its hash. When one of N nodes joins or leaves, only the keys next to its points move,
+    about 1/N of them.
+    A ring never changes once built. Membership changes build a new ring and swap the reference,
+    so route takes no lock and allocates nothing, readers keep using the old ring until they see the new one
+*/
+public class ConsistentHashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+    private static final ConsistentHashRing EMPTY = new ConsistentHashRing(new long[0], new String[0], Collections.emptyList());
+
+    private final long[] points;
+    private final String[] owners;
+    private final List<String> nodes;
+
+    private ConsistentHashRing(long[] points, String[] owners, List<String> nodes) {
+        this.points = points;
+        this.owners = owners;
+        this.nodes = nodes;
+    }
+
+    public static ConsistentHashRing empty() {
+        return EMPTY;
+    }
+
+    public static ConsistentHashRing of(Collection<String> nodes) {
+        return of(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /*
+        The ring only depends on the set of nodes, not on the order they are given in
+    */
+    public static ConsistentHashRing of(Collection<String> nodes, int virtualNodes) {
+        List<String> sortedNodes = new ArrayList<>(new TreeSet<>(nodes));
+        if (sortedNodes.isEmpty()) {
+            return EMPTY;
+        }
+
+        int size = sortedNodes.size() * virtualNodes;
+        long[] unsortedPoints = new long[size];
+        Integer[] order = new Integer[size];
+        for (int n = 0; n < sortedNodes.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int index = n * virtualNodes + v;
+                unsortedPoints[index] = hash(sortedNodes.get(n) + "#" + v);
+                order[index] = index;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedPoints[a], unsortedPoints[b]));
+
+        long[] points = new long[size];
+        String[] owners = new String[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = unsortedPoints[order[i]];
+            owners[i] = sortedNodes.get(order[i] / virtualNodes);
+        }
+        return new ConsistentHashRing(points, owners, Collections.unmodifiableList(sortedNodes));
+    }
+
+    /*
+        The node owning the key, null when the ring is empty
+    */
+    public String route(CharSequence key) {
+        if (points.length == 0) {
+            return null;
+        }
+        return owners[pointIndex(hash(key))];
+    }
+
+    /*
+        The owner of the key followed by the next distinct nodes clockwise, at most count of them.
+        These are the fail over candidates that disturb the other keys the least
+    */
+    public List<String> preferenceList(CharSequence key, int count) {
+        int wanted = Math.min(count, nodes.size());
+        List<String> candidates = new ArrayList<>(wanted);
+        if (wanted == 0) {
+            return candidates;
+        }
+        int start = pointIndex(hash(key));
+        for (int i = 0; i < points.length && candidates.size() < wanted; i++) {
+            String owner = owners[(start + i) % points.length];
+            if (!candidates.contains(owner)) {
+                candidates.add(owner);
+            }
+        }
+        return candidates;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    private int pointIndex(long keyHash) {
+        int index = Arrays.binarySearch(points, keyHash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == points.length ? 0 : index;
+    }
+
+    /*
+        64 bit FNV-1a over the characters, followed by the MurmurHash3 finalizer to spread
+        keys that differ in their last characters only, like "worker#1" and "worker#2"
+    */
+    static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
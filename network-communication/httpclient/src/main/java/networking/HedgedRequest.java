@@ -0,0 +1,145 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/*
+    One logical task call: the primary attempt, failover retries and at most one hedge.
+    The first successful response completes the call and the attempts still running are cancelled.
+    B is what one attempt answers, R what the call completes with once resultFactory has added who answered.
+    Once the call is done its timers are cancelled and its attempts forgotten, so nothing keeps a finished call
+    and its response bodies reachable until the deadline would have passed
+*/
+class HedgedRequest<B, R> {
+    private static final ScheduledThreadPoolExecutor HEDGE_TIMER = createHedgeTimer();
+
+    private final List<String> workersAddresses;
+    private final RequestPolicy policy;
+    private final BiFunction<String, Integer, CompletableFuture<B>> sender;
+    private final ResultFactory<B, R> resultFactory;
+    private final LatencyTracker latencyTracker;
+    private final CompletableFuture<R> result = new CompletableFuture<>();
+    private final List<CompletableFuture<B>> attempts = new ArrayList<>();
+    private int attemptsStarted = 0;
+    private int attemptsRunning = 0;
+    private boolean hedged = false;
+    private ScheduledFuture<?> hedgeTimeout;
+    private Throwable lastFailure;
+
+    HedgedRequest(List<String> workersAddresses, RequestPolicy policy, BiFunction<String, Integer, CompletableFuture<B>> sender,
+                  ResultFactory<B, R> resultFactory, LatencyTracker latencyTracker) {
+        this.workersAddresses = workersAddresses;
+        this.policy = policy;
+        this.sender = sender;
+        this.resultFactory = resultFactory;
+        this.latencyTracker = latencyTracker;
+    }
+
+    CompletableFuture<R> start() {
+        // The deadline timer of orTimeout is removed as soon as the result completes
+        result.orTimeout(policy.getDeadline().toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((taskResult, failure) -> onResultComplete());
+
+        synchronized (this) {
+            startAttempt(false);
+
+            long hedgeDelay = latencyTracker.quantileNanos(policy.getHedgeQuantile());
+            if (!result.isDone() && policy.isHedgingEnabled() && workersAddresses.size() > 1 && hedgeDelay >= 0) {
+                hedgeTimeout = HEDGE_TIMER.schedule(this::hedge, hedgeDelay, TimeUnit.NANOSECONDS);
+            }
+        }
+        return result;
+    }
+
+    private synchronized void hedge() {
+        if (!result.isDone() && !hedged && attemptsStarted < policy.getMaxAttempts()) {
+            hedged = true;
+            startAttempt(true);
+        }
+    }
+
+    private synchronized void startAttempt(boolean hedge) {
+        int attempt = ++attemptsStarted;
+        String workerAddress = workersAddresses.get((attempt - 1) % workersAddresses.size());
+        long startTime = System.nanoTime();
+        attemptsRunning++;
+
+        CompletableFuture<B> response;
+        try {
+            response = sender.apply(workerAddress, attempt);
+        } catch (Throwable throwable) {
+            // A sender that throws before sending, on a malformed address for instance, is a failed attempt too
+            response = CompletableFuture.failedFuture(throwable);
+        }
+        attempts.add(response);
+        response.whenComplete((body, failure) -> onAttemptComplete(workerAddress, attempt, hedge, startTime, body, failure));
+    }
+
+    private synchronized void onAttemptComplete(String workerAddress, int attempt, boolean hedge, long startTime,
+                                                B body, Throwable failure) {
+        attemptsRunning--;
+        if (result.isDone()) {
+            return;
+        }
+
+        if (failure == null) {
+            long latency = System.nanoTime() - startTime;
+            latencyTracker.record(latency);
+            result.complete(resultFactory.create(body, workerAddress, attempt, hedge, latency));
+            return;
+        }
+
+        lastFailure = failure;
+        if (isRetryable(failure) && attemptsStarted < policy.getMaxAttempts()) {
+            startAttempt(false);
+        } else if (attemptsRunning == 0) {
+            result.completeExceptionally(lastFailure);
+        }
+    }
+
+    /*
+        Whichever way the call ended, a response, a failure, the deadline or a cancellation by the caller
+    */
+    private synchronized void onResultComplete() {
+        if (hedgeTimeout != null) {
+            hedgeTimeout.cancel(false);
+            hedgeTimeout = null;
+        }
+        cancelOutstanding();
+        attempts.clear();
+    }
+
+    private void cancelOutstanding() {
+        for (CompletableFuture<B> attempt : attempts) {
+            attempt.cancel(true);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createHedgeTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Otherwise a cancelled hedge would stay queued, and keep its call reachable, until its delay elapsed
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /*
+        Client errors will fail the same way on every worker
+    */
+    private static boolean isRetryable(Throwable failure) {
+        Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+        return !(cause instanceof WorkerResponseException) || ((WorkerResponseException) cause).getStatusCode() >= 500;
+    }
+
+    interface ResultFactory<B, R> {
+        R create(B body, String workerAddress, int attempt, boolean hedge, long latencyNanos);
+    }
+}
@@ -0,0 +1,34 @@
+package networking;
+
+import java.util.Arrays;
+
+/*
+    Keeps the most recent successful request latencies to derive the hedging delay from
+*/
+class LatencyTracker {
+    private static final int WINDOW_SIZE = 512;
+    private static final int MIN_SAMPLES = 20;
+
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int next = 0;
+    private int count = 0;
+
+    synchronized void record(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % WINDOW_SIZE;
+        count = Math.min(count + 1, WINDOW_SIZE);
+    }
+
+    /*
+        Returns -1 until there are enough samples to trust the estimate
+    */
+    synchronized long quantileNanos(double quantile) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(count - 1, Math.ceil(quantile * count) - 1);
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,51 @@
+package networking;
+
+import java.time.Duration;
+
+/*
+    How hard WebClient tries before giving up on a task.
+    attemptTimeout - deadline of a single HTTP exchange
+    deadline       - deadline of the whole call, retries and hedges included
+    maxAttempts    - attempts in total, each failed attempt fails over to the next worker
+    hedgeQuantile  - once the primary has been running longer than this quantile of recent latencies,
+                     a duplicate is sent to the next worker and the first answer wins. 0 disables hedging
+*/
+public class RequestPolicy {
+    private static final RequestPolicy DEFAULTS = new RequestPolicy(Duration.ofSeconds(30), Duration.ofSeconds(60), 3, 0.95);
+
+    private final Duration attemptTimeout;
+    private final Duration deadline;
+    private final int maxAttempts;
+    private final double hedgeQuantile;
+
+    public RequestPolicy(Duration attemptTimeout, Duration deadline, int maxAttempts, double hedgeQuantile) {
+        this.attemptTimeout = attemptTimeout;
+        this.deadline = deadline;
+        this.maxAttempts = maxAttempts;
+        this.hedgeQuantile = hedgeQuantile;
+    }
+
+    public static RequestPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    public Duration getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public double getHedgeQuantile() {
+        return hedgeQuantile;
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgeQuantile > 0;
+    }
+}
@@ -0,0 +1,112 @@
+package networking;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Buffers small tasks per worker and sends them together to the worker's /tasks/batch endpoint.
+    A batch leaves once it holds maxBatchSize tasks or lingerTime after its first task, whichever comes first.
+    Every task still gets its own future, completed with the product or failed with the worker's error for that line
+*/
+public class TaskCoalescer {
+    private static final String BATCH_ENDPOINT = "/tasks/batch";
+    private static final String ERROR_PREFIX = "error: ";
+
+    private final WebClient webClient;
+    private final int maxBatchSize;
+    private final Duration lingerTime;
+    private final Map<String, Batch> openBatches = new HashMap<>();
+
+    public TaskCoalescer(WebClient webClient, int maxBatchSize, Duration lingerTime) {
+        this.webClient = webClient;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerTime = lingerTime;
+    }
+
+    /*
+        workerAddress is the worker's /task address, the batch endpoint is derived from it
+    */
+    public CompletableFuture<String> submit(String workerAddress, String task) {
+        if (task.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("A batched task cannot contain a line break");
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Batch fullBatch = null;
+        synchronized (this) {
+            Batch batch = openBatches.get(workerAddress);
+            if (batch == null) {
+                batch = new Batch(workerAddress);
+                openBatches.put(workerAddress, batch);
+                Batch lingering = batch;
+                CompletableFuture.delayedExecutor(lingerTime.toNanos(), TimeUnit.NANOSECONDS).execute(() -> flush(lingering));
+            }
+            batch.tasks.add(task);
+            batch.results.add(result);
+            if (batch.tasks.size() >= maxBatchSize) {
+                openBatches.remove(workerAddress);
+                fullBatch = batch;
+            }
+        }
+
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        return result;
+    }
+
+    /*
+        Sends every open batch right away instead of waiting for the linger time
+    */
+    public void flush() {
+        List<Batch> batches;
+        synchronized (this) {
+            batches = new ArrayList<>(openBatches.values());
+            openBatches.clear();
+        }
+        batches.forEach(this::send);
+    }
+
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (openBatches.get(batch.workerAddress) != batch) {
+                // Already sent because it filled up
+                return;
+            }
+            openBatches.remove(batch.workerAddress);
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        String batchAddress = URI.create(batch.workerAddress).resolve(BATCH_ENDPOINT).toString();
+        webClient.sendBatch(batchAddress, batch.tasks).whenComplete((lines, failure) -> {
+            for (int i = 0; i < batch.results.size(); i++) {
+                CompletableFuture<String> result = batch.results.get(i);
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else if (lines.get(i).startsWith(ERROR_PREFIX)) {
+                    result.completeExceptionally(new WorkerResponseException(400, lines.get(i).substring(ERROR_PREFIX.length())));
+                } else {
+                    result.complete(lines.get(i));
+                }
+            }
+        });
+    }
+
+    private static class Batch {
+        private final String workerAddress;
+        private final List<String> tasks = new ArrayList<>();
+        private final List<CompletableFuture<String>> results = new ArrayList<>();
+
+        private Batch(String workerAddress) {
+            this.workerAddress = workerAddress;
+        }
+    }
+}
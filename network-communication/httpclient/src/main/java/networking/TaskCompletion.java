@@ -0,0 +1,37 @@
+package networking;
+
+/*
+    One finished task of a streamed batch: its position in the submitted list and either the result or the failure
+*/
+public class TaskCompletion {
+    private final int index;
+    private final TaskResult result;
+    private final Throwable failure;
+
+    public TaskCompletion(int index, TaskResult result, Throwable failure) {
+        this.index = index;
+        this.result = result;
+        this.failure = failure;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public TaskResult getResult() {
+        return result;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + index + " " + (failure == null ? result : "failed: " + failure);
+    }
+}
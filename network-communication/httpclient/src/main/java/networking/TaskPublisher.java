@@ -0,0 +1,207 @@
+package networking;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.IntFunction;
+
+/*
+    Publishes task results in completion order rather than submission order.
+    Requests are only sent while the subscriber has unfulfilled demand, and never more than maxInFlight at once,
+    so a slow consumer holds back the workers instead of piling up responses. Cancelling the subscription
+    cancels the requests still running. A failed task is delivered as a TaskCompletion carrying the failure,
+    the stream goes on with the other tasks. Supports a single subscriber
+*/
+public class TaskPublisher implements Flow.Publisher<TaskCompletion> {
+    private final int taskCount;
+    private final int maxInFlight;
+    private final IntFunction<CompletableFuture<TaskResult>> taskStarter;
+    private boolean subscribed = false;
+
+    public TaskPublisher(int taskCount, int maxInFlight, IntFunction<CompletableFuture<TaskResult>> taskStarter) {
+        this.taskCount = taskCount;
+        this.maxInFlight = maxInFlight;
+        this.taskStarter = taskStarter;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TaskCompletion> subscriber) {
+        synchronized (this) {
+            if (subscribed) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("TaskPublisher supports a single subscriber"));
+                return;
+            }
+            subscribed = true;
+        }
+
+        TaskSubscription subscription = new TaskSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private class TaskSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super TaskCompletion> subscriber;
+        private final Map<Integer, CompletableFuture<TaskResult>> running = new HashMap<>();
+        private final Queue<TaskCompletion> completed = new ArrayDeque<>();
+        private long requested = 0;
+        private int started = 0;
+        private int delivered = 0;
+        private boolean cancelled = false;
+        private boolean draining = false;
+        private boolean missed = false;
+        private Throwable invalidRequest;
+
+        private TaskSubscription(Flow.Subscriber<? super TaskCompletion> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    invalidRequest = new IllegalArgumentException("Non-positive request " + n);
+                } else {
+                    requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            Map<Integer, CompletableFuture<TaskResult>> outstanding;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                completed.clear();
+                outstanding = new HashMap<>(running);
+                running.clear();
+            }
+            outstanding.values().forEach(future -> future.cancel(true));
+        }
+
+        private void onTaskComplete(int index, TaskResult result, Throwable failure) {
+            synchronized (this) {
+                if (running.remove(index) == null) {
+                    // Cancelled in the meantime
+                    return;
+                }
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                completed.add(new TaskCompletion(index, result, cause));
+            }
+            drain();
+        }
+
+        /*
+            Only one thread signals the subscriber at a time. A request() or a completion arriving meanwhile,
+            even from inside onNext, just makes the running loop go around once more.
+            When the subscriber throws, the flag is still released so later signals are not swallowed
+        */
+        private void drain() {
+            synchronized (this) {
+                if (draining) {
+                    missed = true;
+                    return;
+                }
+                draining = true;
+            }
+
+            boolean released = false;
+            try {
+                drainLoop();
+                released = true;
+            } finally {
+                if (!released) {
+                    synchronized (this) {
+                        draining = false;
+                    }
+                }
+            }
+        }
+
+        /*
+            Returns only after releasing the draining flag under the lock, together with the decision to stop
+        */
+        private void drainLoop() {
+            while (true) {
+                int toStart = -1;
+                TaskCompletion next = null;
+                boolean complete = false;
+                Throwable error = null;
+                synchronized (this) {
+                    if (cancelled) {
+                        draining = false;
+                        return;
+                    }
+                    if (invalidRequest != null) {
+                        error = invalidRequest;
+                    } else if (requested > delivered && !completed.isEmpty()) {
+                        next = completed.poll();
+                        delivered++;
+                    } else if (started < taskCount && running.size() < maxInFlight
+                            && delivered + running.size() + completed.size() < requested) {
+                        toStart = started++;
+                        running.put(toStart, new CompletableFuture<>());
+                    } else if (delivered == taskCount) {
+                        complete = true;
+                        cancelled = true;
+                    } else if (missed) {
+                        missed = false;
+                        continue;
+                    } else {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                } else if (next != null) {
+                    subscriber.onNext(next);
+                } else if (toStart >= 0) {
+                    start(toStart);
+                } else if (complete) {
+                    subscriber.onComplete();
+                }
+            }
+        }
+
+        private void start(int index) {
+            CompletableFuture<TaskResult> placeholder;
+            CompletableFuture<TaskResult> future;
+            try {
+                future = taskStarter.apply(index);
+            } catch (Throwable throwable) {
+                // Delivered as a failed task like any other failure
+                future = CompletableFuture.failedFuture(throwable);
+            }
+            synchronized (this) {
+                placeholder = running.get(index);
+                if (placeholder != null) {
+                    running.put(index, future);
+                }
+            }
+            if (placeholder == null) {
+                future.cancel(true);
+                return;
+            }
+            future.whenComplete((result, failure) -> onTaskComplete(index, result, failure));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package networking;
+
+public class TaskResult {
+    private final String body;
+    private final String workerAddress;
+    private final int attempt;
+    private final boolean hedge;
+    private final long latencyNanos;
+
+    public TaskResult(String body, String workerAddress, int attempt, boolean hedge, long latencyNanos) {
+        this.body = body;
+        this.workerAddress = workerAddress;
+        this.attempt = attempt;
+        this.hedge = hedge;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public String getWorkerAddress() {
+        return workerAddress;
+    }
+
+    /*
+        1 for the first attempt, higher after failovers
+    */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /*
+        True when the answer came from the duplicate request rather than the primary one
+    */
+    public boolean isHedge() {
+        return hedge;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s from %s (attempt %d, %s, %d ms)",
+                body.trim(), workerAddress, attempt, hedge ? "hedge" : "primary", latencyNanos / 1_000_000);
+    }
+}
@@ -1,13 +1,22 @@
 package networking;
 
+import computation.BinaryFormat;
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class WebClient {
     private final HttpClient client;
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+    // Binary tasks are chunks of one large multiplication, their latencies would skew the hedge delay of text tasks
+    private final LatencyTracker binaryLatencyTracker = new LatencyTracker();
 
     public WebClient() {
         this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
@@ -22,4 +31,112 @@ public class WebClient {
         return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
                 .thenApply(HttpResponse::body);
     }
+
+    /*
+        Sends the task to the first worker, failing over to the next ones and hedging slow requests
+        as the policy allows. The result tells which worker answered and whether it was the hedge
+    */
+    public CompletableFuture<TaskResult> sendTask(List<String> workersAddresses, byte[] requestPayload, RequestPolicy policy) {
+        HedgedRequest<String, TaskResult> hedgedRequest = new HedgedRequest<>(workersAddresses, policy,
+                (url, attempt) -> sendTask(url, requestPayload, policy.getAttemptTimeout()), TaskResult::new, latencyTracker);
+        return hedgedRequest.start();
+    }
+
+    /*
+        Single attempt with a timeout. Non-200 responses fail with WorkerResponseException
+    */
+    public CompletableFuture<String> sendTask(String url, byte[] requestPayload, Duration timeout) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestPayload))
+                .uri(URI.create(url))
+                .timeout(timeout)
+                .build();
+
+        CompletableFuture<HttpResponse<String>> exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<String> body = exchange.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new CompletionException(new WorkerResponseException(response.statusCode(), response.body().trim()));
+            }
+            return response.body();
+        });
+        // Cancelling a dependent stage does not reach the exchange by itself
+        body.whenComplete((result, failure) -> {
+            if (body.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return body;
+    }
+
+    /*
+        Sends small tasks to a /tasks/batch endpoint, one factor list per line.
+        The worker answers one line per task in the same order
+    */
+    public CompletableFuture<List<String>> sendBatch(String url, List<String> tasks) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofString(String.join("\n", tasks) + "\n"))
+                .uri(URI.create(url))
+                .build();
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(new WorkerResponseException(response.statusCode(), response.body().trim()));
+                    }
+                    List<String> results = Arrays.asList(response.body().split("\n"));
+                    if (results.size() != tasks.size()) {
+                        throw new CompletionException(new WorkerResponseException(response.statusCode(),
+                                "expected " + tasks.size() + " results, got " + results.size()));
+                    }
+                    return results;
+                });
+    }
+
+    /*
+        Sends the factors in the binary format and decodes the binary result,
+        skipping the decimal conversions on both ends
+    */
+    public CompletableFuture<BigInteger> sendBinaryTask(String url, List<BigInteger> factors) {
+        return sendBinaryTask(url, BinaryFormat.encode(factors), null);
+    }
+
+    /*
+        Binary task with the same failover and hedging as sendTask, the call completes with the product
+    */
+    public CompletableFuture<BigInteger> sendBinaryTask(List<String> workersAddresses, List<BigInteger> factors, RequestPolicy policy) {
+        byte[] requestPayload = BinaryFormat.encode(factors);
+        HedgedRequest<BigInteger, BigInteger> hedgedRequest = new HedgedRequest<>(workersAddresses, policy,
+                (url, attempt) -> sendBinaryTask(url, requestPayload, policy.getAttemptTimeout()),
+                (product, workerAddress, attempt, hedge, latencyNanos) -> product, binaryLatencyTracker);
+        return hedgedRequest.start();
+    }
+
+    /*
+        timeout may be null for no deadline
+    */
+    private CompletableFuture<BigInteger> sendBinaryTask(String url, byte[] requestPayload, Duration timeout) {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestPayload))
+                .uri(URI.create(url))
+                .header("Content-Type", BinaryFormat.CONTENT_TYPE)
+                .header("Accept", BinaryFormat.CONTENT_TYPE);
+        if (timeout != null) {
+            requestBuilder.timeout(timeout);
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> exchange = client.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<BigInteger> product = exchange.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new CompletionException(new WorkerResponseException(
+                        response.statusCode(), new String(response.body()).trim()));
+            }
+            return BinaryFormat.decode(response.body());
+        });
+        product.whenComplete((result, failure) -> {
+            if (product.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return product;
+    }
 }
@@ -0,0 +1,16 @@
+package networking;
+
+import java.io.IOException;
+
+public class WorkerResponseException extends IOException {
+    private final int statusCode;
+
+    public WorkerResponseException(int statusCode, String message) {
+        super("Worker responded " + statusCode + ": " + message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
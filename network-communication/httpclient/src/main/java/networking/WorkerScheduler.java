@@ -0,0 +1,251 @@
+package networking;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Dispatches tasks to the least loaded worker instead of mapping them to workers by index.
+    A worker's score is its latency EWMA times the requests it would have in flight, so a host that
+    answers twice as fast ends up with about twice the work. The load per core a worker publishes itself,
+    which also covers work sent by other clients, scales that score up, and orders the workers that have no
+    EWMA yet. Nobody gets more than maxInFlightPerWorker
+    requests at once, tasks wait in a local queue until a slot frees up. A worker that fails is left out
+    for a backoff period that doubles with every consecutive failure.
+    Latency statistics outlive a single batch of tasks, the worker set may change between batches
+*/
+public class WorkerScheduler {
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final long BASE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final WebClient webClient;
+    private final int maxInFlightPerWorker;
+    private final Duration attemptTimeout;
+    private final int maxAttempts;
+    private final Map<String, WorkerState> workers = new LinkedHashMap<>();
+    private final Map<String, WorkerState> retiredWorkers = new HashMap<>();
+    private final Queue<PendingTask> pendingTasks = new ArrayDeque<>();
+    private boolean retryScheduled = false;
+
+    public WorkerScheduler(WebClient webClient, int maxInFlightPerWorker, RequestPolicy policy) {
+        this.webClient = webClient;
+        this.maxInFlightPerWorker = maxInFlightPerWorker;
+        this.attemptTimeout = policy.getAttemptTimeout();
+        this.maxAttempts = policy.getMaxAttempts();
+    }
+
+    /*
+        Replaces the worker set, with no published load known for any of them
+    */
+    public synchronized void setWorkers(List<String> workersAddresses) {
+        Map<String, Double> loadPerCoreByAddress = new LinkedHashMap<>();
+        for (String workerAddress : workersAddresses) {
+            loadPerCoreByAddress.put(workerAddress, 0.0);
+        }
+        setWorkers(loadPerCoreByAddress);
+    }
+
+    /*
+        Replaces the worker set, each worker with the load per core it last published, 0 when unknown.
+        Known workers keep their statistics, requests in flight to removed ones still complete
+    */
+    public synchronized void setWorkers(Map<String, Double> loadPerCoreByAddress) {
+        Map<String, WorkerState> current = new HashMap<>(workers);
+        workers.clear();
+        for (Map.Entry<String, Double> worker : loadPerCoreByAddress.entrySet()) {
+            String workerAddress = worker.getKey();
+            WorkerState state = current.remove(workerAddress);
+            if (state == null) {
+                state = retiredWorkers.remove(workerAddress);
+            }
+            if (state == null) {
+                state = new WorkerState(workerAddress);
+            }
+            state.reportedLoadPerCore = Math.max(0, worker.getValue());
+            workers.put(workerAddress, state);
+        }
+        retiredWorkers.putAll(current);
+        dispatchPending();
+    }
+
+    public CompletableFuture<String> submit(byte[] requestPayload) {
+        PendingTask task = new PendingTask(requestPayload);
+        synchronized (this) {
+            pendingTasks.add(task);
+            dispatchPending();
+        }
+        return task.result;
+    }
+
+    public List<CompletableFuture<String>> submitAll(List<byte[]> requestPayloads) {
+        List<CompletableFuture<String>> results = new ArrayList<>(requestPayloads.size());
+        synchronized (this) {
+            for (byte[] requestPayload : requestPayloads) {
+                PendingTask task = new PendingTask(requestPayload);
+                pendingTasks.add(task);
+                results.add(task.result);
+            }
+            dispatchPending();
+        }
+        return results;
+    }
+
+    /*
+        Snapshot of the per worker statistics, mainly for logging
+    */
+    public synchronized Map<String, String> describeWorkers() {
+        Map<String, String> description = new LinkedHashMap<>();
+        for (WorkerState state : workers.values()) {
+            description.put(state.address, String.format("ewma %.1f ms, in flight %d, published load %.2f per core, completed %d, failed %d",
+                    state.ewmaLatencyNanos / 1e6, state.inFlight, state.reportedLoadPerCore, state.completed, state.failed));
+        }
+        return description;
+    }
+
+    private void dispatchPending() {
+        while (!pendingTasks.isEmpty()) {
+            if (workers.isEmpty()) {
+                PendingTask task;
+                while ((task = pendingTasks.poll()) != null) {
+                    task.result.completeExceptionally(new IllegalStateException("No workers available"));
+                }
+                return;
+            }
+
+            long now = System.nanoTime();
+            WorkerState worker = pickWorker(pendingTasks.peek(), now);
+            if (worker == null) {
+                retryAfterBackoff(now);
+                return;
+            }
+            send(pendingTasks.poll(), worker);
+        }
+    }
+
+    /*
+        Workers that have not answered yet score 0, so each one gets probed before the EWMA takes over.
+        Equal scores, as between those, go to the worker with less work in flight and less published load.
+        A task that already failed on a worker avoids it while there is an alternative
+    */
+    private WorkerState pickWorker(PendingTask task, long now) {
+        WorkerState best = null;
+        double bestScore = Double.MAX_VALUE;
+        double bestLoad = Double.MAX_VALUE;
+        for (WorkerState worker : workers.values()) {
+            if (worker.inFlight >= maxInFlightPerWorker || now - worker.unavailableUntilNanos < 0) {
+                continue;
+            }
+            double load = (worker.inFlight + 1) * (1 + worker.reportedLoadPerCore);
+            double score = worker.ewmaLatencyNanos * load;
+            if (task.failedOn.contains(worker.address) && task.failedOn.size() < workers.size()) {
+                score = Double.MAX_VALUE / 2;
+            }
+            if (best == null || score < bestScore || (score == bestScore && load < bestLoad)) {
+                best = worker;
+                bestScore = score;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /*
+        Completions drive dispatching, so only when nothing is in flight a timer has to wake up
+        the queue once the first worker comes out of backoff
+    */
+    private void retryAfterBackoff(long now) {
+        long earliest = Long.MAX_VALUE;
+        for (WorkerState worker : workers.values()) {
+            if (worker.inFlight > 0) {
+                return;
+            }
+            earliest = Math.min(earliest, worker.unavailableUntilNanos - now);
+        }
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        CompletableFuture.delayedExecutor(Math.max(0, earliest), TimeUnit.NANOSECONDS).execute(() -> {
+            synchronized (this) {
+                retryScheduled = false;
+                dispatchPending();
+            }
+        });
+    }
+
+    private void send(PendingTask task, WorkerState worker) {
+        worker.inFlight++;
+        task.attempts++;
+        long startTime = System.nanoTime();
+        webClient.sendTask(worker.address, task.requestPayload, attemptTimeout)
+                .whenCompleteAsync((body, failure) -> onComplete(task, worker, System.nanoTime() - startTime, body, failure));
+    }
+
+    private synchronized void onComplete(PendingTask task, WorkerState worker, long latencyNanos, String body, Throwable failure) {
+        worker.inFlight--;
+        if (failure == null) {
+            worker.recordLatency(latencyNanos);
+            worker.consecutiveFailures = 0;
+            worker.completed++;
+            task.result.complete(body);
+        } else {
+            worker.backOff();
+            worker.failed++;
+            task.failedOn.add(worker.address);
+            if (task.attempts < maxAttempts) {
+                pendingTasks.add(task);
+            } else {
+                task.result.completeExceptionally(failure);
+            }
+        }
+        dispatchPending();
+    }
+
+    private static class WorkerState {
+        private final String address;
+        private double ewmaLatencyNanos = 0;
+        private double reportedLoadPerCore = 0;
+        private int inFlight = 0;
+        private int consecutiveFailures = 0;
+        private long unavailableUntilNanos = System.nanoTime();
+        private long completed = 0;
+        private long failed = 0;
+
+        private WorkerState(String address) {
+            this.address = address;
+        }
+
+        private void recordLatency(long latencyNanos) {
+            if (ewmaLatencyNanos == 0) {
+                ewmaLatencyNanos = latencyNanos;
+            } else {
+                ewmaLatencyNanos += EWMA_WEIGHT * (latencyNanos - ewmaLatencyNanos);
+            }
+        }
+
+        private void backOff() {
+            consecutiveFailures++;
+            long backoff = BASE_BACKOFF_NANOS << Math.min(consecutiveFailures - 1, 16);
+            unavailableUntilNanos = System.nanoTime() + Math.min(backoff, MAX_BACKOFF_NANOS);
+        }
+    }
+
+    private static class PendingTask {
+        private final byte[] requestPayload;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final List<String> failedOn = new ArrayList<>(1);
+        private int attempts = 0;
+
+        private PendingTask(byte[] requestPayload) {
+            this.requestPayload = requestPayload;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.util.concurrent.Semaphore;
+
+/*
+    Bounds the number of requests that are running or waiting for a thread.
+    Requests over the limit are turned away immediately instead of growing an unbounded queue
+*/
+public class AdmissionController {
+    private final Semaphore permits;
+    private final int capacity;
+
+    public AdmissionController(int maxRunning, int maxQueued) {
+        this.capacity = maxRunning + maxQueued;
+        this.permits = new Semaphore(capacity);
+    }
+
+    public boolean tryAdmit() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAdmitted() {
+        return capacity - permits.availablePermits();
+    }
+}
@@ -0,0 +1,25 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+    SHARED   - a single fixed pool runs every endpoint, so /status waits behind slow /task requests
+    PLATFORM - /task runs on a bounded pool of platform threads, /status keeps its own small pool
+    VIRTUAL  - /task runs on one virtual thread per request, /status keeps its own small pool.
+               Falls back to PLATFORM when the running JVM has no virtual threads
+*/
+public enum ExecutorMode {
+    SHARED,
+    PLATFORM,
+    VIRTUAL;
+
+    public ExecutorService createTaskExecutor(int threads) {
+        if (this == VIRTUAL) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException exception) {
+                System.out.println("Virtual threads are not available, using a pool of " + threads + " platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+}
@@ -1,19 +1,64 @@
 import com.sun.net.httpserver.Headers;
-import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpHandler;
+import computation.BinaryFormat;
+import computation.FactorMultisetKey;
+import computation.FactorReader;
+import computation.FactorTokenizer;
+import computation.PayloadTooLargeException;
+import computation.ProductAccumulator;
+import computation.ProductCalculator;
+import computation.ResultCache;
+import engine.FileTransferExchange;
+import engine.ServerEngine;
+import jobs.Job;
+import jobs.JobManager;
+import jobs.RequestSpool;
+import metrics.EndpointMetrics;
+import metrics.ServerMetrics;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.math.BigInteger;
-import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class WebServer {
     private static final String TASK_ENDPOINT = "/task";
+    private static final String BATCH_ENDPOINT = "/tasks/batch";
     private static final String STATUS_ENDPOINT = "/status";
+    private static final String METRICS_ENDPOINT = "/metrics";
+    private static final String JOB_RESULT_METRICS_NAME = "/task/{id}";
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+    private static final int RESPONSE_CHUNK_SIZE = 64 * 1024;
     private final int port;
-    private HttpServer server;
+    private final ProductCalculator productCalculator;
+    private final int maxFactorLength;
+    private final long maxBodySize;
+    private final WebServerConfig config;
+    private final AdmissionController admissionController;
+    private final ResultCache resultCache;
+    private final JobManager jobManager;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicLong batchedTasks = new AtomicLong();
+    private Executor taskExecutor;
+    private ExecutorService serverExecutorService;
+    private ExecutorService taskExecutorService;
+    private ServerEngine server;
 
     public static void main(String[] args) {
         int serverPort = 8080;
@@ -21,32 +66,172 @@ public class WebServer {
             serverPort = Integer.parseInt(args[0]);
         }
 
-        WebServer server = new WebServer(serverPort);
+        WebServer server = new WebServer(serverPort, WebServerConfig.fromSystemProperties());
         server.startServer();
 
         System.out.println("Server is listening on port " + serverPort);
     }
 
     public WebServer(int port) {
+        this(port, new WebServerConfig());
+    }
+
+    public WebServer(int port, WebServerConfig config) {
         this.port = port;
+        this.config = config;
+        this.admissionController = new AdmissionController(config.getTaskThreads(), config.getTaskQueueCapacity());
+        this.productCalculator = config.getMultiplicationMode().createCalculator(config.getMultiplicationParallelism());
+        this.maxFactorLength = config.getMaxFactorLength();
+        this.maxBodySize = config.getMaxBodySize();
+        this.resultCache = config.getCacheMaxBytes() > 0 ? new ResultCache(config.getCacheMaxBytes()) : null;
+        this.jobManager = new JobManager(config.getJobThreads(), config.getJobQueueCapacity(),
+                config.getJobSpillThreshold(), config.getJobRetentionSeconds() * 1000L, config.getJobMaxRetained());
     }
 
     public void startServer() {
+        this.server = config.getEngineType().create(port, maxBodySize);
+
+        server.createContext(STATUS_ENDPOINT, instrumented(STATUS_ENDPOINT, this::handleStatusCheckRequest));
+        server.createContext(TASK_ENDPOINT, taskOrJobResult(admitted(TASK_ENDPOINT, this::handleTaskRequest),
+                instrumented(JOB_RESULT_METRICS_NAME, this::handleJobRequest)));
+        server.createContext(BATCH_ENDPOINT, admitted(BATCH_ENDPOINT, this::handleBatchRequest));
+        server.createContext(METRICS_ENDPOINT, instrumented(METRICS_ENDPOINT, this::handleMetricsRequest));
+        registerSampledMetrics();
+
+        if (config.getExecutorMode() == ExecutorMode.SHARED) {
+            // Tasks run directly on the thread that received the exchange
+            this.serverExecutorService = Executors.newFixedThreadPool(config.getTaskThreads());
+            this.taskExecutor = Runnable::run;
+        } else {
+            this.serverExecutorService = Executors.newFixedThreadPool(config.getStatusThreads());
+            this.taskExecutorService = config.getExecutorMode().createTaskExecutor(config.getTaskThreads());
+            this.taskExecutor = taskExecutorService;
+        }
+        server.setExecutor(serverExecutorService);
+
         try {
-            this.server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.start();
         } catch (IOException exception) {
             exception.printStackTrace();
+        }
+    }
+
+    /*
+        Stops accepting, then waits for every thread the server owns to finish, so a stopped server leaves
+        nothing running behind. Requests still in flight get STOP_TIMEOUT_MILLIS before they are interrupted
+    */
+    public void stopServer() {
+        server.stop();
+        shutdownAndAwait(taskExecutorService);
+        shutdownAndAwait(serverExecutorService);
+        jobManager.shutdown(STOP_TIMEOUT_MILLIS);
+        productCalculator.shutdown();
+    }
+
+    private static void shutdownAndAwait(ExecutorService executorService) {
+        if (executorService == null) {
             return;
         }
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        HttpContext statusContext = server.createContext(STATUS_ENDPOINT);
-        HttpContext taskContext = server.createContext(TASK_ENDPOINT);
+    private void registerSampledMetrics() {
+        metrics.registerGauge("webserver_task_queue_depth", () -> Math.max(0, admissionController.getAdmitted() - runningTasks.get()));
+        metrics.registerGauge("webserver_task_running", runningTasks::get);
+        metrics.registerCounter("webserver_batch_tasks_total", batchedTasks::get);
+        metrics.registerGauge("webserver_jobs_queued", jobManager::getQueuedJobs);
+        metrics.registerGauge("webserver_jobs_retained", jobManager::getRetainedJobs);
+        if (resultCache != null) {
+            metrics.registerCounter("webserver_cache_hits_total", resultCache::getHits);
+            metrics.registerCounter("webserver_cache_misses_total", resultCache::getMisses);
+            metrics.registerCounter("webserver_cache_rejections_total", resultCache::getRejections);
+            metrics.registerCounter("webserver_cache_evictions_total", resultCache::getEvictions);
+            metrics.registerGauge("webserver_cache_bytes", resultCache::getUsedBytes);
+        }
+    }
+
+    private HttpHandler instrumented(String endpoint, HttpHandler handler) {
+        EndpointMetrics endpointMetrics = metrics.endpoint(endpoint);
+        return exchange -> {
+            long startTime = endpointMetrics.begin();
+            try {
+                handler.handle(exchange);
+            } finally {
+                endpointMetrics.end(startTime);
+            }
+        };
+    }
 
-        statusContext.setHandler(this::handleStatusCheckRequest);
-        taskContext.setHandler(this::handleTaskRequest);
+    /*
+        GET /task/{id} only reads a finished result. It is answered on the server threads and never
+        admitted, so polling for a job that is done still works while the task queue is full
+    */
+    private static HttpHandler taskOrJobResult(HttpHandler taskHandler, HttpHandler jobResultHandler) {
+        return exchange -> {
+            if (exchange.getRequestURI().getPath().startsWith(TASK_ENDPOINT + "/")) {
+                jobResultHandler.handle(exchange);
+            } else {
+                taskHandler.handle(exchange);
+            }
+        };
+    }
 
-        server.setExecutor(Executors.newFixedThreadPool(8));
-        server.start();
+    /*
+        Admits the request and hands it over to the task executor, so the server threads stay free for /status
+    */
+    private HttpHandler admitted(String endpoint, HttpHandler handler) {
+        EndpointMetrics endpointMetrics = metrics.endpoint(endpoint);
+        return exchange -> dispatchTaskRequest(exchange, endpointMetrics, handler);
+    }
+
+    private void dispatchTaskRequest(HttpExchange exchange, EndpointMetrics taskMetrics, HttpHandler handler) throws IOException {
+        long startTime = taskMetrics.begin();
+
+        if (!admissionController.tryAdmit()) {
+            rejectOverloaded(exchange, taskMetrics, startTime);
+            return;
+        }
+
+        try {
+            taskExecutor.execute(() -> {
+                runningTasks.incrementAndGet();
+                try {
+                    handler.handle(exchange);
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                } finally {
+                    runningTasks.decrementAndGet();
+                    admissionController.release();
+                    exchange.close();
+                    taskMetrics.end(startTime);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            admissionController.release();
+            rejectOverloaded(exchange, taskMetrics, startTime);
+        }
+    }
+
+    private void rejectOverloaded(HttpExchange exchange, EndpointMetrics taskMetrics, long startTime) throws IOException {
+        taskMetrics.reject();
+        try {
+            sendOverloaded(exchange);
+        } finally {
+            taskMetrics.end(startTime);
+        }
+    }
+
+    private void sendOverloaded(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().put("Retry-After", Collections.singletonList(String.valueOf(config.getRetryAfterSeconds())));
+        sendResponse("Server is overloaded, try again later\n".getBytes(), exchange, 503);
     }
 
     private void handleTaskRequest(HttpExchange exchange) throws IOException {
@@ -67,33 +252,355 @@ public class WebServer {
             isDebugMode = true;
         }
 
+        long contentLength;
+        try {
+            contentLength = declaredContentLength(headers);
+        } catch (NumberFormatException exception) {
+            sendInvalidContentLength(exchange, exception);
+            return;
+        }
+        if (contentLength > maxBodySize) {
+            sendResponse("Request body is too large\n".getBytes(), exchange, 413);
+            return;
+        }
+
+        boolean binaryRequest = isBinaryMediaType(headers.getFirst("Content-Type"));
+        boolean binaryResponse = isBinaryMediaType(headers.getFirst("Accept"));
+
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null && Arrays.asList(query.split("&")).contains("async=true")) {
+            submitJob(exchange, binaryRequest, binaryResponse);
+            return;
+        }
+
         long startTime = System.nanoTime();
 
-        byte[] requestBytes = exchange.getRequestBody().readAllBytes();
-        byte[] responseBytes = calculateResponse(requestBytes);
+        String cacheStatus = "DISABLED";
+        byte[] responseBytes;
+        try {
+            if (resultCache == null || binaryRequest || binaryResponse) {
+                // Only text requests with text responses are cached
+                cacheStatus = resultCache == null ? cacheStatus : "BYPASS";
+                responseBytes = calculateResponse(factorReader(exchange.getRequestBody(), binaryRequest), binaryResponse);
+            } else {
+                InputStream requestBody = exchange.getRequestBody();
+                int cacheableBodySize = config.getCacheMaxBodySize();
+                byte[] body = readUpTo(requestBody, cacheableBodySize + 1);
+                FactorMultisetKey key = body.length <= cacheableBodySize ? FactorMultisetKey.of(body, body.length) : null;
+
+                if (key == null) {
+                    cacheStatus = "BYPASS";
+                    responseBytes = calculateResponse(factorReader(new SequenceInputStream(new ByteArrayInputStream(body), requestBody), false), false);
+                } else {
+                    responseBytes = resultCache.get(key);
+                    if (responseBytes != null) {
+                        cacheStatus = "HIT";
+                    } else {
+                        cacheStatus = "MISS";
+                        responseBytes = calculateResponse(factorReader(new ByteArrayInputStream(body), false), false);
+                        resultCache.put(key, responseBytes);
+                    }
+                }
+            }
+        } catch (PayloadTooLargeException exception) {
+            sendResponse((exception.getMessage() + "\n").getBytes(), exchange, 413);
+            return;
+        } catch (NumberFormatException exception) {
+            sendResponse(("Invalid factor: " + exception.getMessage() + "\n").getBytes(), exchange, 400);
+            return;
+        }
 
         long finishTime = System.nanoTime();
 
         if (isDebugMode) {
-            String debugMessage = String.format("Operation took %d ns\n", finishTime - startTime);
+            String debugMessage = resultCache == null
+                    ? String.format("Operation took %d ns", finishTime - startTime)
+                    : String.format("Operation took %d ns, cache %s (hits %d, misses %d)",
+                            finishTime - startTime, cacheStatus, resultCache.getHits(), resultCache.getMisses());
             exchange.getResponseHeaders().put("X-Debug-Info", Collections.singletonList(debugMessage));
         }
+        if (binaryResponse) {
+            exchange.getResponseHeaders().put("Content-Type", Collections.singletonList(BinaryFormat.CONTENT_TYPE));
+        }
 
+        long writeStartTime = System.nanoTime();
         sendResponse(responseBytes, exchange);
+        metrics.phase("write").record(System.nanoTime() - writeStartTime);
+    }
+
+    /*
+        Many small independent tasks in one exchange. The body holds one comma separated factor list per line,
+        the response holds one line per task in the same order: the product, or "error: <reason>" when that
+        single task is invalid. The other tasks of the batch are still answered
+    */
+    private void handleBatchRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+            exchange.close();
+            return;
+        }
+
+        int maxBatchBodySize = config.getBatchMaxBodySize();
+        long contentLength;
+        try {
+            contentLength = declaredContentLength(exchange.getRequestHeaders());
+        } catch (NumberFormatException exception) {
+            sendInvalidContentLength(exchange, exception);
+            return;
+        }
+        byte[] body = contentLength > maxBatchBodySize
+                ? null
+                : readUpTo(exchange.getRequestBody(), maxBatchBodySize + 1);
+        if (body == null || body.length > maxBatchBodySize) {
+            sendResponse(("Batch body is larger than " + maxBatchBodySize + " bytes\n").getBytes(), exchange, 413);
+            return;
+        }
+
+        int length = body.length;
+        if (length > 0 && body[length - 1] == '\n') {
+            length--;
+        }
+
+        long startTime = System.nanoTime();
+        StringBuilder response = new StringBuilder();
+        int tasks = 0;
+        int lineStart = 0;
+        while (lineStart <= length) {
+            if (++tasks > config.getBatchMaxTasks()) {
+                sendResponse(("Batch has more than " + config.getBatchMaxTasks() + " tasks\n").getBytes(), exchange, 413);
+                return;
+            }
+
+            int lineEnd = lineStart;
+            while (lineEnd < length && body[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            FactorReader factorReader = factorReader(new ByteArrayInputStream(body, lineStart, lineEnd - lineStart), false);
+            try {
+                ProductAccumulator accumulator = productCalculator.newAccumulator();
+                BigInteger factor;
+                while ((factor = factorReader.nextFactor()) != null) {
+                    accumulator.add(factor);
+                }
+                response.append(accumulator.result()).append('\n');
+            } catch (PayloadTooLargeException | NumberFormatException exception) {
+                response.append("error: ").append(exception.getMessage()).append('\n');
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        batchedTasks.addAndGet(tasks);
+        metrics.phase("batch_compute").record(System.nanoTime() - startTime);
+        sendResponse(response.toString().getBytes(), exchange);
+    }
+
+    /*
+        Stores the body, queues the job and answers 202 with the job id right away
+    */
+    private void submitJob(HttpExchange exchange, boolean binaryRequest, boolean binaryResponse) throws IOException {
+        RequestSpool spool;
+        try {
+            spool = RequestSpool.spool(exchange.getRequestBody(), maxBodySize);
+        } catch (PayloadTooLargeException exception) {
+            sendResponse((exception.getMessage() + "\n").getBytes(), exchange, 413);
+            return;
+        }
+
+        Job job;
+        try {
+            job = jobManager.submit(outputStream -> {
+                BigInteger product;
+                try (InputStream requestBody = spool.open()) {
+                    product = calculateProduct(factorReader(requestBody, binaryRequest));
+                } finally {
+                    spool.delete();
+                }
+                long formatStartTime = System.nanoTime();
+                writeResponse(product, binaryResponse, outputStream);
+                metrics.phase("format").record(System.nanoTime() - formatStartTime);
+            }, binaryResponse);
+        } catch (RejectedExecutionException exception) {
+            spool.delete();
+            sendOverloaded(exchange);
+            return;
+        }
+
+        exchange.getResponseHeaders().put("Location", Collections.singletonList(TASK_ENDPOINT + "/" + job.getId()));
+        sendResponse((job.getId() + "\n").getBytes(), exchange, 202);
     }
 
-    private byte[] calculateResponse(byte[] requestBytes) {
-        String bodyString = new String(requestBytes);
-        String[] stringNumbers = bodyString.split(",");
+    private void handleJobRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
 
-        BigInteger result = BigInteger.ONE;
+        String jobId = exchange.getRequestURI().getPath().substring(TASK_ENDPOINT.length() + 1);
+        Job job = jobManager.get(jobId);
+        if (job == null) {
+            sendResponse("Unknown job\n".getBytes(), exchange, 404);
+            return;
+        }
 
-        for (String number : stringNumbers) {
-            BigInteger bigInteger = new BigInteger(number);
-            result = result.multiply(bigInteger);
+        exchange.getResponseHeaders().put("X-Job-Status", Collections.singletonList(job.getStatus().name()));
+        switch (job.getStatus()) {
+            case QUEUED:
+            case RUNNING:
+                sendResponse((job.getStatus().name() + "\n").getBytes(), exchange, 202);
+                break;
+            case FAILED:
+                sendJobFailure(exchange, job.getFailure());
+                break;
+            case DONE:
+                sendJobResult(exchange, job);
+                break;
         }
+    }
 
-        return String.format("Result of the multiplication is %s\n", result).getBytes();
+    private void sendJobFailure(HttpExchange exchange, Throwable failure) throws IOException {
+        if (failure instanceof PayloadTooLargeException) {
+            sendResponse((failure.getMessage() + "\n").getBytes(), exchange, 413);
+        } else if (failure instanceof NumberFormatException) {
+            sendResponse(("Invalid factor: " + failure.getMessage() + "\n").getBytes(), exchange, 400);
+        } else {
+            sendResponse(("Job failed: " + failure + "\n").getBytes(), exchange, 500);
+        }
+    }
+
+    /*
+        Spilled results go from the page cache to the socket without a copy when the engine supports it,
+        otherwise they are streamed from the mapping in small chunks
+    */
+    private void sendJobResult(HttpExchange exchange, Job job) throws IOException {
+        if (job.isBinaryResult()) {
+            exchange.getResponseHeaders().put("Content-Type", Collections.singletonList(BinaryFormat.CONTENT_TYPE));
+        }
+        Path spillFile = job.getSpillFile();
+        if (spillFile != null && exchange instanceof FileTransferExchange) {
+            try {
+                ((FileTransferExchange) exchange).sendFile(200, spillFile);
+                return;
+            } catch (NoSuchFileException exception) {
+                // Discarded in the meantime
+            }
+        }
+
+        ByteBuffer result = job.getResult();
+        if (result == null) {
+            sendResponse("Unknown job\n".getBytes(), exchange, 404);
+            return;
+        }
+        exchange.sendResponseHeaders(200, result.remaining());
+        OutputStream outputStream = exchange.getResponseBody();
+        byte[] chunk = new byte[Math.min(result.remaining(), 64 * 1024)];
+        while (result.hasRemaining()) {
+            int length = Math.min(chunk.length, result.remaining());
+            result.get(chunk, 0, length);
+            outputStream.write(chunk, 0, length);
+        }
+        outputStream.flush();
+        outputStream.close();
+    }
+
+    /*
+        -1 when the request has no Content-Length. A value that is not a non negative number
+        throws NumberFormatException, to be answered with 400
+    */
+    private static long declaredContentLength(Headers headers) {
+        String contentLength = headers.getFirst("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+        long length = Long.parseLong(contentLength.trim());
+        if (length < 0) {
+            throw new NumberFormatException("negative length " + length);
+        }
+        return length;
+    }
+
+    private void sendInvalidContentLength(HttpExchange exchange, NumberFormatException exception) throws IOException {
+        sendResponse(("Invalid Content-Length: " + exception.getMessage() + "\n").getBytes(), exchange, 400);
+    }
+
+    private static boolean isBinaryMediaType(String headerValue) {
+        return headerValue != null && headerValue.toLowerCase().contains(BinaryFormat.CONTENT_TYPE);
+    }
+
+    private FactorReader factorReader(InputStream requestBody, boolean binary) {
+        if (binary) {
+            return new BinaryFormat.Reader(requestBody, maxFactorLength, maxBodySize);
+        }
+        return new FactorTokenizer(requestBody, maxFactorLength, maxBodySize);
+    }
+
+    private byte[] calculateResponse(FactorReader factorReader, boolean binaryResponse) throws IOException {
+        BigInteger result = calculateProduct(factorReader);
+
+        long formatStartTime = System.nanoTime();
+        byte[] response = binaryResponse
+                ? BinaryFormat.encode(result)
+                : String.format("Result of the multiplication is %s\n", result).getBytes();
+        metrics.phase("format").record(System.nanoTime() - formatStartTime);
+        return response;
+    }
+
+    private BigInteger calculateProduct(FactorReader factorReader) throws IOException {
+        ProductAccumulator accumulator = productCalculator.newAccumulator();
+
+        long parseStartTime = System.nanoTime();
+        BigInteger factor;
+        while ((factor = factorReader.nextFactor()) != null) {
+            accumulator.add(factor);
+        }
+
+        long multiplyStartTime = System.nanoTime();
+        BigInteger result = accumulator.result();
+
+        long finishTime = System.nanoTime();
+        metrics.phase("read_parse").record(multiplyStartTime - parseStartTime);
+        metrics.phase("multiply").record(finishTime - multiplyStartTime);
+        return result;
+    }
+
+    /*
+        Same bytes as calculateResponse, but the digits of a text response are written in chunks
+        instead of being copied into one array
+    */
+    private static void writeResponse(BigInteger result, boolean binaryResponse, OutputStream outputStream) throws IOException {
+        if (binaryResponse) {
+            BinaryFormat.write(result, outputStream);
+            return;
+        }
+        outputStream.write("Result of the multiplication is ".getBytes());
+        String digits = result.toString();
+        for (int start = 0; start < digits.length(); start += RESPONSE_CHUNK_SIZE) {
+            int end = Math.min(digits.length(), start + RESPONSE_CHUNK_SIZE);
+            outputStream.write(digits.substring(start, end).getBytes(StandardCharsets.US_ASCII));
+        }
+        outputStream.write('\n');
+    }
+
+    /*
+        Reads at most limit bytes, so only bodies small enough to be cached are ever fully buffered
+    */
+    private static byte[] readUpTo(InputStream inputStream, int limit) throws IOException {
+        byte[] buffer = new byte[Math.min(limit, 8192)];
+        int length = 0;
+        while (length < limit) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min((long) limit, buffer.length * 2L));
+            }
+            int read = inputStream.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
     }
 
     private void handleStatusCheckRequest(HttpExchange exchange) throws IOException {
@@ -106,8 +613,42 @@ public class WebServer {
         sendResponse(responseMessage.getBytes(), exchange);
     }
 
+    private void handleMetricsRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().put("Content-Type", Collections.singletonList("text/plain; version=0.0.4"));
+        sendResponse(metrics.scrape().getBytes(), exchange);
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getRunningTasks() {
+        return runningTasks.get();
+    }
+
+    public int getQueuedTasks() {
+        return Math.max(0, admissionController.getAdmitted() - runningTasks.get());
+    }
+
+    /*
+        Tasks answered, rejected requests excluded. A /tasks/batch request counts for every task it carried
+    */
+    public long getCompletedTasks() {
+        EndpointMetrics taskMetrics = metrics.endpoint(TASK_ENDPOINT);
+        return taskMetrics.getLatency().getCount() - taskMetrics.getRejected() + batchedTasks.get();
+    }
+
     private void sendResponse(byte[] bytes, HttpExchange exchange) throws IOException {
-        exchange.sendResponseHeaders(200, bytes.length);
+        sendResponse(bytes, exchange, 200);
+    }
+
+    private void sendResponse(byte[] bytes, HttpExchange exchange, int statusCode) throws IOException {
+        exchange.sendResponseHeaders(statusCode, bytes.length);
         OutputStream outputStream = exchange.getResponseBody();
         outputStream.write(bytes);
         outputStream.flush();
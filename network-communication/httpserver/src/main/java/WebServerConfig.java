@@ -0,0 +1,249 @@
+import computation.MultiplicationMode;
+import engine.EngineType;
+
+/*
+    Tuning options of the WebServer. Every option can be overridden with a
+    -Dwebserver.<option> system property, for example -Dwebserver.multiplication=sequential
+    Setting webserver.cache.max.bytes to 0 disables the result cache
+*/
+public class WebServerConfig {
+    private static final String PROPERTY_PREFIX = "webserver.";
+
+    private MultiplicationMode multiplicationMode = MultiplicationMode.PRODUCT_TREE;
+    private int multiplicationParallelism = Runtime.getRuntime().availableProcessors();
+    private int maxFactorLength = 1024 * 1024;
+    private long maxBodySize = 64L * 1024 * 1024;
+    private EngineType engineType = EngineType.SUN;
+    private ExecutorMode executorMode = ExecutorMode.PLATFORM;
+    private int taskThreads = 8;
+    private int statusThreads = 2;
+    private int taskQueueCapacity = 64;
+    private int retryAfterSeconds = 1;
+    private long cacheMaxBytes = 64L * 1024 * 1024;
+    private int cacheMaxBodySize = 1024 * 1024;
+    private int jobThreads = 2;
+    private int jobQueueCapacity = 64;
+    private long jobSpillThreshold = 1024 * 1024;
+    private int jobRetentionSeconds = 300;
+    private int jobMaxRetained = 1024;
+    private int batchMaxBodySize = 1024 * 1024;
+    private int batchMaxTasks = 4096;
+
+    public static WebServerConfig fromSystemProperties() {
+        WebServerConfig config = new WebServerConfig();
+        config.multiplicationMode = MultiplicationMode.valueOf(
+                property("multiplication", config.multiplicationMode.name()).toUpperCase());
+        config.multiplicationParallelism = Integer.parseInt(
+                property("multiplication.parallelism", String.valueOf(config.multiplicationParallelism)));
+        config.maxFactorLength = Integer.parseInt(
+                property("max.factor.length", String.valueOf(config.maxFactorLength)));
+        config.maxBodySize = Long.parseLong(
+                property("max.body.size", String.valueOf(config.maxBodySize)));
+        config.engineType = EngineType.valueOf(
+                property("engine", config.engineType.name()).toUpperCase());
+        config.executorMode = ExecutorMode.valueOf(
+                property("executor", config.executorMode.name()).toUpperCase());
+        config.taskThreads = Integer.parseInt(
+                property("task.threads", String.valueOf(config.taskThreads)));
+        config.statusThreads = Integer.parseInt(
+                property("status.threads", String.valueOf(config.statusThreads)));
+        config.taskQueueCapacity = Integer.parseInt(
+                property("task.queue.capacity", String.valueOf(config.taskQueueCapacity)));
+        config.retryAfterSeconds = Integer.parseInt(
+                property("retry.after.seconds", String.valueOf(config.retryAfterSeconds)));
+        config.cacheMaxBytes = Long.parseLong(
+                property("cache.max.bytes", String.valueOf(config.cacheMaxBytes)));
+        config.cacheMaxBodySize = Integer.parseInt(
+                property("cache.max.body.size", String.valueOf(config.cacheMaxBodySize)));
+        config.jobThreads = Integer.parseInt(
+                property("job.threads", String.valueOf(config.jobThreads)));
+        config.jobQueueCapacity = Integer.parseInt(
+                property("job.queue.capacity", String.valueOf(config.jobQueueCapacity)));
+        config.jobSpillThreshold = Long.parseLong(
+                property("job.spill.threshold", String.valueOf(config.jobSpillThreshold)));
+        config.jobRetentionSeconds = Integer.parseInt(
+                property("job.retention.seconds", String.valueOf(config.jobRetentionSeconds)));
+        config.jobMaxRetained = Integer.parseInt(
+                property("job.max.retained", String.valueOf(config.jobMaxRetained)));
+        config.batchMaxBodySize = Integer.parseInt(
+                property("batch.max.body.size", String.valueOf(config.batchMaxBodySize)));
+        config.batchMaxTasks = Integer.parseInt(
+                property("batch.max.tasks", String.valueOf(config.batchMaxTasks)));
+        return config;
+    }
+
+    private static String property(String name, String defaultValue) {
+        return System.getProperty(PROPERTY_PREFIX + name, defaultValue);
+    }
+
+    public MultiplicationMode getMultiplicationMode() {
+        return multiplicationMode;
+    }
+
+    public WebServerConfig setMultiplicationMode(MultiplicationMode multiplicationMode) {
+        this.multiplicationMode = multiplicationMode;
+        return this;
+    }
+
+    public int getMultiplicationParallelism() {
+        return multiplicationParallelism;
+    }
+
+    public WebServerConfig setMultiplicationParallelism(int multiplicationParallelism) {
+        this.multiplicationParallelism = multiplicationParallelism;
+        return this;
+    }
+
+    public int getMaxFactorLength() {
+        return maxFactorLength;
+    }
+
+    public WebServerConfig setMaxFactorLength(int maxFactorLength) {
+        this.maxFactorLength = maxFactorLength;
+        return this;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public WebServerConfig setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
+    public EngineType getEngineType() {
+        return engineType;
+    }
+
+    public WebServerConfig setEngineType(EngineType engineType) {
+        this.engineType = engineType;
+        return this;
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public WebServerConfig setExecutorMode(ExecutorMode executorMode) {
+        this.executorMode = executorMode;
+        return this;
+    }
+
+    public int getTaskThreads() {
+        return taskThreads;
+    }
+
+    public WebServerConfig setTaskThreads(int taskThreads) {
+        this.taskThreads = taskThreads;
+        return this;
+    }
+
+    public int getStatusThreads() {
+        return statusThreads;
+    }
+
+    public WebServerConfig setStatusThreads(int statusThreads) {
+        this.statusThreads = statusThreads;
+        return this;
+    }
+
+    public int getTaskQueueCapacity() {
+        return taskQueueCapacity;
+    }
+
+    public WebServerConfig setTaskQueueCapacity(int taskQueueCapacity) {
+        this.taskQueueCapacity = taskQueueCapacity;
+        return this;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public WebServerConfig setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public WebServerConfig setCacheMaxBytes(long cacheMaxBytes) {
+        this.cacheMaxBytes = cacheMaxBytes;
+        return this;
+    }
+
+    public int getCacheMaxBodySize() {
+        return cacheMaxBodySize;
+    }
+
+    public WebServerConfig setCacheMaxBodySize(int cacheMaxBodySize) {
+        this.cacheMaxBodySize = cacheMaxBodySize;
+        return this;
+    }
+
+    public int getJobThreads() {
+        return jobThreads;
+    }
+
+    public WebServerConfig setJobThreads(int jobThreads) {
+        this.jobThreads = jobThreads;
+        return this;
+    }
+
+    public int getJobQueueCapacity() {
+        return jobQueueCapacity;
+    }
+
+    public WebServerConfig setJobQueueCapacity(int jobQueueCapacity) {
+        this.jobQueueCapacity = jobQueueCapacity;
+        return this;
+    }
+
+    public long getJobSpillThreshold() {
+        return jobSpillThreshold;
+    }
+
+    public WebServerConfig setJobSpillThreshold(long jobSpillThreshold) {
+        this.jobSpillThreshold = jobSpillThreshold;
+        return this;
+    }
+
+    public int getJobRetentionSeconds() {
+        return jobRetentionSeconds;
+    }
+
+    public WebServerConfig setJobRetentionSeconds(int jobRetentionSeconds) {
+        this.jobRetentionSeconds = jobRetentionSeconds;
+        return this;
+    }
+
+    public int getJobMaxRetained() {
+        return jobMaxRetained;
+    }
+
+    public WebServerConfig setJobMaxRetained(int jobMaxRetained) {
+        this.jobMaxRetained = jobMaxRetained;
+        return this;
+    }
+
+    public int getBatchMaxBodySize() {
+        return batchMaxBodySize;
+    }
+
+    public WebServerConfig setBatchMaxBodySize(int batchMaxBodySize) {
+        this.batchMaxBodySize = batchMaxBodySize;
+        return this;
+    }
+
+    public int getBatchMaxTasks() {
+        return batchMaxTasks;
+    }
+
+    public WebServerConfig setBatchMaxTasks(int batchMaxTasks) {
+        this.batchMaxTasks = batchMaxTasks;
+        return this;
+    }
+}
@@ -0,0 +1,120 @@
+package computation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.List;
+
+/*
+    Binary /task encoding: every number is a 4 byte big-endian length followed by that many bytes
+    of big-endian two's-complement magnitude, exactly as produced by BigInteger.toByteArray().
+    A request carries any number of factors, a response carries the single result
+*/
+public final class BinaryFormat {
+    public static final String CONTENT_TYPE = "application/x-bigint-factors";
+
+    private BinaryFormat() {
+    }
+
+    public static byte[] encode(BigInteger number) {
+        byte[] magnitude = number.toByteArray();
+        byte[] encoded = new byte[4 + magnitude.length];
+        encoded[0] = (byte) (magnitude.length >>> 24);
+        encoded[1] = (byte) (magnitude.length >>> 16);
+        encoded[2] = (byte) (magnitude.length >>> 8);
+        encoded[3] = (byte) magnitude.length;
+        System.arraycopy(magnitude, 0, encoded, 4, magnitude.length);
+        return encoded;
+    }
+
+    /*
+        A request body carrying all the factors
+    */
+    public static byte[] encode(List<BigInteger> numbers) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            for (BigInteger number : numbers) {
+                write(number, outputStream);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /*
+        The single number of a response. Throws NumberFormatException unless the bytes hold exactly one number
+    */
+    public static BigInteger decode(byte[] encoded) {
+        try {
+            Reader reader = new Reader(new ByteArrayInputStream(encoded), Integer.MAX_VALUE, Long.MAX_VALUE);
+            BigInteger number = reader.nextFactor();
+            if (number == null || reader.nextFactor() != null) {
+                throw new NumberFormatException("Expected exactly one number in " + encoded.length + " bytes");
+            }
+            return number;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /*
+        Same bytes as encode, without copying the magnitude into a second array
+    */
+    public static void write(BigInteger number, OutputStream outputStream) throws IOException {
+        byte[] magnitude = number.toByteArray();
+        outputStream.write(new byte[]{(byte) (magnitude.length >>> 24), (byte) (magnitude.length >>> 16),
+                (byte) (magnitude.length >>> 8), (byte) magnitude.length});
+        outputStream.write(magnitude);
+    }
+
+    public static class Reader implements FactorReader {
+        private final DataInputStream inputStream;
+        private final int maxFactorLength;
+        private final long maxBodySize;
+        private long bytesRead = 0;
+
+        public Reader(InputStream inputStream, int maxFactorLength, long maxBodySize) {
+            this.inputStream = new DataInputStream(inputStream);
+            this.maxFactorLength = maxFactorLength;
+            this.maxBodySize = maxBodySize;
+        }
+
+        @Override
+        public BigInteger nextFactor() throws IOException {
+            int first = inputStream.read();
+            if (first == -1) {
+                return null;
+            }
+
+            int length;
+            byte[] magnitude;
+            try {
+                length = (first << 24) | (inputStream.readUnsignedByte() << 16)
+                        | (inputStream.readUnsignedByte() << 8) | inputStream.readUnsignedByte();
+                if (length <= 0) {
+                    throw new NumberFormatException("Invalid factor length " + length);
+                }
+                if (length > maxFactorLength) {
+                    throw new PayloadTooLargeException("Factor is longer than " + maxFactorLength + " bytes");
+                }
+                bytesRead += 4L + length;
+                if (bytesRead > maxBodySize) {
+                    throw new PayloadTooLargeException("Request body is larger than " + maxBodySize + " bytes");
+                }
+
+                magnitude = new byte[length];
+                inputStream.readFully(magnitude);
+            } catch (EOFException exception) {
+                throw new NumberFormatException("Truncated factor");
+            }
+            return new BigInteger(magnitude);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package computation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Identifies a request body by the multiset of its factors, so "2,3" and " 3, 02" share a key.
+    Each canonical factor is hashed on its own and the hashes are summed, which makes the hash
+    independent of the factor order without parsing any number.
+    The sorted canonical factors are kept too, so two bodies whose hashes collide are never mistaken for each other
+*/
+public final class FactorMultisetKey {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long SECOND_LANE_SEED = 0x9e3779b97f4a7c15L;
+
+    private final long factorCount;
+    private final long firstLane;
+    private final long secondLane;
+    private final byte[] canonicalFactors;
+
+    private FactorMultisetKey(long factorCount, long firstLane, long secondLane, byte[] canonicalFactors) {
+        this.factorCount = factorCount;
+        this.firstLane = firstLane;
+        this.secondLane = secondLane;
+        this.canonicalFactors = canonicalFactors;
+    }
+
+    /*
+        Returns null when the body is not a well formed factor list, so it is left to the tokenizer to report the error
+    */
+    public static FactorMultisetKey of(byte[] body, int length) {
+        long factorCount = 0;
+        long firstLane = 0;
+        long secondLane = 0;
+        List<String> factors = new ArrayList<>();
+
+        int position = 0;
+        while (position < length) {
+            while (position < length && isWhitespace(body[position])) {
+                position++;
+            }
+
+            boolean negative = false;
+            if (position < length && (body[position] == '-' || body[position] == '+')) {
+                negative = body[position] == '-';
+                position++;
+            }
+            boolean sawDigit = false;
+            while (position < length && body[position] == '0') {
+                sawDigit = true;
+                position++;
+            }
+
+            long hash = FNV_OFFSET_BASIS;
+            boolean zero = true;
+            int digitsStart = position;
+            while (position < length && body[position] >= '0' && body[position] <= '9') {
+                sawDigit = true;
+                zero = false;
+                hash = (hash ^ body[position]) * FNV_PRIME;
+                position++;
+            }
+            if (!sawDigit) {
+                if (position == length && factorCount == 0 && !negative) {
+                    break;
+                }
+                return null;
+            }
+            if (negative && !zero) {
+                hash = (hash ^ '-') * FNV_PRIME;
+            }
+            String digits = zero ? "0" : new String(body, digitsStart, position - digitsStart, StandardCharsets.US_ASCII);
+            factors.add(negative && !zero ? "-" + digits : digits);
+
+            while (position < length && isWhitespace(body[position])) {
+                position++;
+            }
+            if (position < length) {
+                if (body[position] != ',') {
+                    return null;
+                }
+                position++;
+                if (position == length) {
+                    return null;
+                }
+            }
+
+            factorCount++;
+            firstLane += mix(hash);
+            secondLane += mix(hash ^ SECOND_LANE_SEED);
+        }
+
+        Collections.sort(factors);
+        byte[] canonicalFactors = String.join(",", factors).getBytes(StandardCharsets.US_ASCII);
+        return new FactorMultisetKey(factorCount, firstLane, secondLane, canonicalFactors);
+    }
+
+    private static boolean isWhitespace(byte character) {
+        return character == ' ' || character == '\t' || character == '\r' || character == '\n';
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    int sizeInBytes() {
+        return canonicalFactors.length;
+    }
+
+    long hash64() {
+        return mix(firstLane ^ Long.rotateLeft(secondLane, 32) ^ factorCount);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FactorMultisetKey)) {
+            return false;
+        }
+        FactorMultisetKey key = (FactorMultisetKey) other;
+        return factorCount == key.factorCount && firstLane == key.firstLane && secondLane == key.secondLane
+                && Arrays.equals(canonicalFactors, key.canonicalFactors);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) hash64();
+    }
+}
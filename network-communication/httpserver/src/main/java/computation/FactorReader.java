@@ -0,0 +1,11 @@
+package computation;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+public interface FactorReader {
+    /*
+        Returns the next factor, or null once the stream is exhausted
+    */
+    BigInteger nextFactor() throws IOException;
+}
@@ -0,0 +1,118 @@
+package computation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+    Reads comma separated integers straight from a stream, without buffering the whole body.
+    Whitespace around the numbers is ignored. Factors that fit in a long are parsed without
+    creating any intermediate String
+*/
+public class FactorTokenizer implements FactorReader {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final InputStream inputStream;
+    private final int maxFactorLength;
+    private final long maxBodySize;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private char[] token = new char[64];
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+    private long bytesRead = 0;
+    private boolean endOfStream = false;
+
+    public FactorTokenizer(InputStream inputStream, int maxFactorLength, long maxBodySize) {
+        this.inputStream = inputStream;
+        this.maxFactorLength = maxFactorLength;
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    public BigInteger nextFactor() throws IOException {
+        int tokenLength = 0;
+        boolean trailingWhitespace = false;
+        boolean sawSeparator = false;
+
+        int next;
+        while ((next = read()) != -1) {
+            char character = (char) next;
+            if (character == ',') {
+                sawSeparator = true;
+                break;
+            }
+            if (Character.isWhitespace(character)) {
+                trailingWhitespace = tokenLength > 0;
+                continue;
+            }
+            if (trailingWhitespace) {
+                throw new NumberFormatException("Unexpected whitespace inside a factor");
+            }
+            if (tokenLength == maxFactorLength) {
+                throw new PayloadTooLargeException("Factor is longer than " + maxFactorLength + " characters");
+            }
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, Math.min(token.length * 2, maxFactorLength));
+            }
+            token[tokenLength++] = character;
+        }
+
+        if (tokenLength == 0) {
+            if (sawSeparator) {
+                throw new NumberFormatException("Empty factor");
+            }
+            return null;
+        }
+
+        return parse(token, tokenLength);
+    }
+
+    private static BigInteger parse(char[] token, int length) {
+        if (length > MAX_LONG_DIGITS) {
+            return new BigInteger(new String(token, 0, length));
+        }
+
+        int position = 0;
+        boolean negative = false;
+        if (token[0] == '-' || token[0] == '+') {
+            negative = token[0] == '-';
+            position++;
+        }
+        if (position == length) {
+            throw new NumberFormatException("Sign without digits");
+        }
+
+        long value = 0;
+        for (; position < length; position++) {
+            int digit = Character.digit(token[position], 10);
+            if (digit < 0) {
+                throw new NumberFormatException("Illegal character in factor: " + token[position]);
+            }
+            value = value * 10 + digit;
+        }
+
+        return BigInteger.valueOf(negative ? -value : value);
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            if (endOfStream) {
+                return -1;
+            }
+            bufferLimit = inputStream.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            if (bufferLimit <= 0) {
+                bufferLimit = 0;
+                endOfStream = true;
+                return -1;
+            }
+            bytesRead += bufferLimit;
+            if (bytesRead > maxBodySize) {
+                throw new PayloadTooLargeException("Request body is larger than " + maxBodySize + " bytes");
+            }
+        }
+        return buffer[bufferPosition++] & 0xFF;
+    }
+}
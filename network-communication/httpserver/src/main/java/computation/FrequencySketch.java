@@ -0,0 +1,56 @@
+package computation;
+
+/*
+    A count-min sketch of 4-bit counters that estimates how often a key was requested recently.
+    All counters are halved after every sampleSize increments, so old popularity fades away
+*/
+class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final byte[] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(64, expectedEntries * 4) - 1) << 1;
+        this.counters = new byte[size];
+        this.mask = size - 1;
+        this.sampleSize = size * 10;
+    }
+
+    void increment(long hash) {
+        boolean incremented = false;
+        for (long seed : SEEDS) {
+            int index = index(hash, seed);
+            if (counters[index] < MAX_COUNT) {
+                counters[index]++;
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(long hash) {
+        int frequency = MAX_COUNT;
+        for (long seed : SEEDS) {
+            frequency = Math.min(frequency, counters[index(hash, seed)]);
+        }
+        return frequency;
+    }
+
+    private int index(long hash, long seed) {
+        long mixed = (hash ^ seed) * 0x9e3779b97f4a7c15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+
+    private void reset() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (byte) (counters[i] >> 1);
+        }
+        additions /= 2;
+    }
+}
@@ -0,0 +1,16 @@
+package computation;
+
+public enum MultiplicationMode {
+    SEQUENTIAL,
+    PRODUCT_TREE;
+
+    public ProductCalculator createCalculator(int parallelism) {
+        switch (this) {
+            case SEQUENTIAL:
+                return new SequentialProductCalculator();
+            case PRODUCT_TREE:
+            default:
+                return new ProductTreeCalculator(parallelism);
+        }
+    }
+}
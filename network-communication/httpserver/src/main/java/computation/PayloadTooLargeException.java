@@ -0,0 +1,9 @@
+package computation;
+
+import java.io.IOException;
+
+public class PayloadTooLargeException extends IOException {
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
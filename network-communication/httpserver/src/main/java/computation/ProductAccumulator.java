@@ -0,0 +1,12 @@
+package computation;
+
+import java.math.BigInteger;
+
+/*
+    Receives factors one by one as they are parsed, so the full factor list never has to be held in memory
+*/
+public interface ProductAccumulator {
+    void add(BigInteger factor);
+
+    BigInteger result();
+}
@@ -0,0 +1,16 @@
+package computation;
+
+import java.math.BigInteger;
+import java.util.List;
+
+public interface ProductCalculator {
+    BigInteger multiply(List<BigInteger> factors);
+
+    ProductAccumulator newAccumulator();
+
+    /*
+        Releases the threads the calculator owns, it is not used afterwards
+    */
+    default void shutdown() {
+    }
+}
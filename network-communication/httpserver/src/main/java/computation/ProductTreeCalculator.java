@@ -0,0 +1,141 @@
+package computation;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+    Multiplies the factors as a balanced binary tree, so both operands of every multiplication
+    have a similar size and BigInteger can use its sub-quadratic algorithms.
+    Subtrees above SEQUENTIAL_THRESHOLD factors are multiplied in parallel on a fork-join pool
+*/
+public class ProductTreeCalculator implements ProductCalculator {
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+    private final ForkJoinPool pool;
+
+    public ProductTreeCalculator(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @Override
+    public BigInteger multiply(List<BigInteger> factors) {
+        BigInteger[] array = factors.toArray(new BigInteger[0]);
+        if (array.length <= SEQUENTIAL_THRESHOLD) {
+            return multiplyRange(array, 0, array.length);
+        }
+
+        return pool.invoke(new SubtreeProduct(array, 0, array.length));
+    }
+
+    @Override
+    public ProductAccumulator newAccumulator() {
+        return new StreamingProductTree();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    static BigInteger multiplyRange(BigInteger[] factors, int from, int to) {
+        int length = to - from;
+        if (length == 0) {
+            return BigInteger.ONE;
+        }
+        if (length == 1) {
+            return factors[from];
+        }
+        if (length == 2) {
+            return factors[from].multiply(factors[from + 1]);
+        }
+
+        int middle = (from + to) >>> 1;
+        return multiplyRange(factors, from, middle).multiply(multiplyRange(factors, middle, to));
+    }
+
+    private static class SubtreeProduct extends RecursiveTask<BigInteger> {
+        private final BigInteger[] factors;
+        private final int from;
+        private final int to;
+
+        SubtreeProduct(BigInteger[] factors, int from, int to) {
+            this.factors = factors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BigInteger compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return multiplyRange(factors, from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            SubtreeProduct left = new SubtreeProduct(factors, from, middle);
+            SubtreeProduct right = new SubtreeProduct(factors, middle, to);
+            left.fork();
+            BigInteger rightProduct = right.compute();
+            return left.join().multiply(rightProduct);
+        }
+    }
+
+    /*
+        Builds the same balanced tree while the factors are still arriving.
+        Every SEQUENTIAL_THRESHOLD factors form a leaf that is multiplied on the pool, and leaves are
+        merged like a binary counter: levels.get(i) holds the product of 2^i leaves, or null
+    */
+    private class StreamingProductTree implements ProductAccumulator {
+        private final List<CompletableFuture<BigInteger>> levels = new ArrayList<>();
+        private BigInteger[] leaf = new BigInteger[SEQUENTIAL_THRESHOLD];
+        private int leafSize = 0;
+
+        @Override
+        public void add(BigInteger factor) {
+            leaf[leafSize++] = factor;
+            if (leafSize == SEQUENTIAL_THRESHOLD) {
+                flushLeaf();
+            }
+        }
+
+        @Override
+        public BigInteger result() {
+            if (leafSize > 0) {
+                flushLeaf();
+            }
+
+            CompletableFuture<BigInteger> result = CompletableFuture.completedFuture(BigInteger.ONE);
+            for (CompletableFuture<BigInteger> level : levels) {
+                if (level != null) {
+                    result = result.thenCombineAsync(level, BigInteger::multiply, pool);
+                }
+            }
+            levels.clear();
+            return result.join();
+        }
+
+        private void flushLeaf() {
+            BigInteger[] factors = leaf;
+            int size = leafSize;
+            leaf = new BigInteger[SEQUENTIAL_THRESHOLD];
+            leafSize = 0;
+
+            CompletableFuture<BigInteger> carry = CompletableFuture.supplyAsync(() -> multiplyRange(factors, 0, size), pool);
+            for (int level = 0; ; level++) {
+                if (level == levels.size()) {
+                    levels.add(carry);
+                    return;
+                }
+                CompletableFuture<BigInteger> sibling = levels.get(level);
+                if (sibling == null) {
+                    levels.set(level, carry);
+                    return;
+                }
+                levels.set(level, null);
+                carry = sibling.thenCombineAsync(carry, BigInteger::multiply, pool);
+            }
+        }
+    }
+}
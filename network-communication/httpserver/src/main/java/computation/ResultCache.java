@@ -0,0 +1,110 @@
+package computation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Least recently used cache of encoded /task responses, bounded by the total size of the stored bytes.
+    A new entry only replaces the eviction victims when the frequency sketch says it has been requested
+    more often than they have, so a scan of one-off requests cannot flush the popular results (TinyLFU admission)
+*/
+public class ResultCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int AVERAGE_ENTRY_BYTES = 4096;
+
+    private final long maxBytes;
+    private final LinkedHashMap<FactorMultisetKey, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long usedBytes = 0;
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE / 8, maxBytes / AVERAGE_ENTRY_BYTES));
+    }
+
+    public synchronized byte[] get(FactorMultisetKey key) {
+        sketch.increment(key.hash64());
+        byte[] value = entries.get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    public synchronized void put(FactorMultisetKey key, byte[] value) {
+        long entryBytes = sizeOf(key, value);
+        if (entryBytes > maxBytes || entries.containsKey(key)) {
+            return;
+        }
+
+        if (usedBytes + entryBytes > maxBytes && !admit(key, entryBytes)) {
+            rejections.incrementAndGet();
+            return;
+        }
+
+        Iterator<Map.Entry<FactorMultisetKey, byte[]>> eldest = entries.entrySet().iterator();
+        while (usedBytes + entryBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<FactorMultisetKey, byte[]> victim = eldest.next();
+            usedBytes -= sizeOf(victim.getKey(), victim.getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+
+        entries.put(key, value);
+        usedBytes += entryBytes;
+    }
+
+    /*
+        The candidate must be more popular than every entry it would push out
+    */
+    private boolean admit(FactorMultisetKey candidate, long candidateBytes) {
+        int candidateFrequency = sketch.frequency(candidate.hash64());
+        long freedBytes = 0;
+        for (Map.Entry<FactorMultisetKey, byte[]> victim : entries.entrySet()) {
+            if (usedBytes - freedBytes + candidateBytes <= maxBytes) {
+                break;
+            }
+            if (sketch.frequency(victim.getKey().hash64()) >= candidateFrequency) {
+                return false;
+            }
+            freedBytes += sizeOf(victim.getKey(), victim.getValue());
+        }
+        return true;
+    }
+
+    private static long sizeOf(FactorMultisetKey key, byte[] value) {
+        return key.sizeInBytes() + value.length + ENTRY_OVERHEAD_BYTES;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,37 @@
+package computation;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/*
+    Multiplies every factor into a single running product, one at a time
+*/
+public class SequentialProductCalculator implements ProductCalculator {
+    @Override
+    public BigInteger multiply(List<BigInteger> factors) {
+        BigInteger result = BigInteger.ONE;
+
+        for (BigInteger factor : factors) {
+            result = result.multiply(factor);
+        }
+
+        return result;
+    }
+
+    @Override
+    public ProductAccumulator newAccumulator() {
+        return new ProductAccumulator() {
+            private BigInteger result = BigInteger.ONE;
+
+            @Override
+            public void add(BigInteger factor) {
+                result = result.multiply(factor);
+            }
+
+            @Override
+            public BigInteger result() {
+                return result;
+            }
+        };
+    }
+}
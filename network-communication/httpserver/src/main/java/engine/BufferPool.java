@@ -0,0 +1,34 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/*
+    Recycles direct buffers so socket reads avoid the JDK's temporary copies.
+    Only the selector thread touches the pool, so it needs no synchronization
+*/
+class BufferPool {
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+
+    BufferPool(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.pollFirst();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffers.size() < maxPooledBuffers) {
+            buffers.addFirst(buffer);
+        }
+    }
+}
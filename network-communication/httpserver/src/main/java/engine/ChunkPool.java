@@ -0,0 +1,30 @@
+package engine;
+
+import java.util.ArrayDeque;
+
+/*
+    Recycles the heap chunks request bodies are buffered in and responses are built in.
+    The selector thread and handler threads both take and return chunks, so unlike BufferPool it is synchronized.
+    A chunk that is not returned, because its connection failed, is simply left to the garbage collector
+*/
+class ChunkPool {
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private final int chunkSize;
+    private final int maxPooledChunks;
+
+    ChunkPool(int chunkSize, int maxPooledChunks) {
+        this.chunkSize = chunkSize;
+        this.maxPooledChunks = maxPooledChunks;
+    }
+
+    synchronized byte[] acquire() {
+        byte[] chunk = chunks.pollFirst();
+        return chunk != null ? chunk : new byte[chunkSize];
+    }
+
+    synchronized void release(byte[] chunk) {
+        if (chunk.length == chunkSize && chunks.size() < maxPooledChunks) {
+            chunks.addFirst(chunk);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package engine;
+
+public enum EngineType {
+    SUN,
+    NIO;
+
+    public ServerEngine create(int port, long maxBodySize) {
+        switch (this) {
+            case NIO:
+                return new NioServerEngine(port, maxBodySize);
+            case SUN:
+            default:
+                return new SunServerEngine(port);
+        }
+    }
+}
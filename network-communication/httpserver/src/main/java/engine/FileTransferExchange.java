@@ -0,0 +1,12 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/*
+    Implemented by exchanges that can send a file straight from the page cache to the socket,
+    without copying it through the Java heap
+*/
+public interface FileTransferExchange {
+    void sendFile(int responseCode, Path file) throws IOException;
+}
@@ -0,0 +1,447 @@
+package engine;
+
+import com.sun.net.httpserver.Headers;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/*
+    State of one keep-alive connection. Everything except onExchangeCompleted() runs on the selector thread.
+    Requests are dispatched as soon as their headers are parsed, the body streams to the handler while
+    it arrives, so pipelined requests run concurrently while their responses are written strictly in request order.
+    An idle connection holds no buffers at all
+*/
+class NioConnection {
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+    private static final int MAX_PIPELINED_REQUESTS = 16;
+    // Heap buffers are written in slices of this size, so the temporary direct buffer the JDK copies them
+    // through stays small whatever the size of the buffer
+    private static final int WRITE_SLICE_SIZE = 16 * 1024;
+    private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final NioServerEngine engine;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayDeque<NioHttpExchange> inFlight = new ArrayDeque<>();
+    // Heap ByteBuffers in read mode, ResponseChunks and FileRegions
+    private final ArrayDeque<Object> pendingWrites = new ArrayDeque<>();
+
+    private byte[] headerBytes;
+    private int headerLength = 0;
+    private String method;
+    private String target;
+    private String protocol;
+    private Headers requestHeaders;
+    private RequestBodyStream body;
+    private long bodyRemaining = 0;
+    private boolean readingBody = false;
+    private boolean keepAlive = true;
+    private boolean closeAfterWrites = false;
+    private long lastActivity = System.currentTimeMillis();
+
+    NioConnection(NioServerEngine engine, SocketChannel channel, SelectionKey key) {
+        this.engine = engine;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    InetSocketAddress getRemoteAddress() {
+        try {
+            return (InetSocketAddress) channel.getRemoteAddress();
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    ChunkPool getChunkPool() {
+        return engine.getChunkPool();
+    }
+
+    boolean isIdleSince(long timestamp) {
+        return inFlight.isEmpty() && pendingWrites.isEmpty() && headerLength == 0 && !readingBody && lastActivity < timestamp;
+    }
+
+    void onReadable() throws IOException {
+        ByteBuffer buffer = engine.getBufferPool().acquire();
+        try {
+            int read = channel.read(buffer);
+            if (read == -1) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            buffer.flip();
+            while (buffer.hasRemaining() && !closeAfterWrites) {
+                if (readingBody) {
+                    readBody(buffer);
+                } else {
+                    readHeaders(buffer);
+                }
+            }
+        } finally {
+            engine.getBufferPool().release(buffer);
+        }
+        updateInterest();
+    }
+
+    void onWritable() throws IOException {
+        writePending();
+    }
+
+    /*
+        Called from the handler thread
+    */
+    void onExchangeCompleted() {
+        engine.scheduleWrite(this);
+    }
+
+    /*
+        Moves the responses that are ready, in request order, to the write queue
+    */
+    void collectCompletedResponses() throws IOException {
+        while (!inFlight.isEmpty() && inFlight.peekFirst().isCompleted()) {
+            NioHttpExchange exchange = inFlight.pollFirst();
+            ByteBuffer head = exchange.getEncodedHead();
+            if (head == null) {
+                close();
+                return;
+            }
+            queueWrite(head);
+            for (ByteBuffer chunk : exchange.getResponseChunks()) {
+                pendingWrites.addLast(new ResponseChunk(chunk));
+            }
+            if (exchange.getResponseFile() != null) {
+                pendingWrites.addLast(new FileRegion(exchange.getResponseFile(), exchange.getResponseFileLength()));
+            }
+            if (!exchange.isKeepAlive()) {
+                closeAfterWrites = true;
+                dropInFlight();
+                break;
+            }
+        }
+        writePending();
+    }
+
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        if (body != null) {
+            body.abort();
+            body = null;
+        }
+        readingBody = false;
+        engine.forgetPaused(this);
+        for (Object pendingWrite : pendingWrites) {
+            if (pendingWrite instanceof FileRegion) {
+                ((FileRegion) pendingWrite).close();
+            } else if (pendingWrite instanceof ResponseChunk) {
+                engine.getChunkPool().release(((ResponseChunk) pendingWrite).bytes.array());
+            }
+        }
+        pendingWrites.clear();
+        dropInFlight();
+    }
+
+    private void dropInFlight() {
+        for (NioHttpExchange exchange : inFlight) {
+            exchange.closeResponseFile();
+        }
+        inFlight.clear();
+    }
+
+    private void readHeaders(ByteBuffer buffer) throws IOException {
+        if (headerBytes == null) {
+            headerBytes = new byte[512];
+        }
+        while (buffer.hasRemaining()) {
+            if (headerLength == headerBytes.length) {
+                if (headerLength == MAX_HEADER_SIZE) {
+                    respondAndClose(431);
+                    return;
+                }
+                headerBytes = Arrays.copyOf(headerBytes, Math.min(headerLength * 2, MAX_HEADER_SIZE));
+            }
+            headerBytes[headerLength++] = buffer.get();
+            if (headerLength == 2 && headerBytes[0] == '\r' && headerBytes[1] == '\n') {
+                // Tolerate a stray line break between pipelined requests
+                headerLength = 0;
+            } else if (headerLength >= 4 && headerBytes[headerLength - 1] == '\n' && headerBytes[headerLength - 2] == '\r'
+                    && headerBytes[headerLength - 3] == '\n' && headerBytes[headerLength - 4] == '\r') {
+                onHeadersComplete();
+                return;
+            }
+        }
+    }
+
+    private void onHeadersComplete() throws IOException {
+        String[] lines = new String(headerBytes, 0, headerLength - 4, StandardCharsets.ISO_8859_1).split("\r\n");
+        headerBytes = null;
+        headerLength = 0;
+
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            respondAndClose(400);
+            return;
+        }
+        method = requestLine[0];
+        target = requestLine[1];
+        protocol = requestLine[2];
+
+        requestHeaders = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                respondAndClose(400);
+                return;
+            }
+            requestHeaders.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+
+        String connectionHeader = requestHeaders.getFirst("Connection");
+        if (protocol.equals("HTTP/1.0")) {
+            keepAlive = connectionHeader != null && connectionHeader.equalsIgnoreCase("keep-alive");
+        } else {
+            keepAlive = connectionHeader == null || !connectionHeader.toLowerCase().contains("close");
+        }
+
+        if (requestHeaders.containsKey("Transfer-Encoding")) {
+            respondAndClose(411);
+            return;
+        }
+
+        long contentLength;
+        try {
+            String contentLengthHeader = requestHeaders.getFirst("Content-Length");
+            contentLength = contentLengthHeader == null ? 0 : Long.parseLong(contentLengthHeader);
+        } catch (NumberFormatException exception) {
+            respondAndClose(400);
+            return;
+        }
+        if (contentLength < 0) {
+            respondAndClose(400);
+            return;
+        }
+        if (contentLength > engine.getMaxBodySize()) {
+            respondAndClose(413);
+            return;
+        }
+
+        URI requestUri;
+        try {
+            requestUri = URI.create(target);
+        } catch (IllegalArgumentException exception) {
+            respondAndClose(400);
+            return;
+        }
+
+        if (contentLength > 0 && inFlight.isEmpty() && "100-continue".equalsIgnoreCase(requestHeaders.getFirst("Expect"))) {
+            queueWrite(ByteBuffer.wrap(CONTINUE_RESPONSE));
+            writePending();
+        }
+        RequestBodyStream requestBody = null;
+        if (contentLength > 0) {
+            requestBody = new RequestBodyStream(engine, contentLength);
+            body = requestBody;
+            bodyRemaining = contentLength;
+            readingBody = true;
+        }
+        dispatch(requestUri, requestBody);
+    }
+
+    private void readBody(ByteBuffer buffer) {
+        int length = (int) Math.min(buffer.remaining(), bodyRemaining);
+        body.receive(buffer, length);
+        bodyRemaining -= length;
+        if (bodyRemaining == 0) {
+            body = null;
+            readingBody = false;
+        }
+    }
+
+    private void dispatch(URI requestUri, RequestBodyStream requestBody) {
+        NioHttpContext context = engine.findContext(requestUri.getPath());
+        NioHttpExchange exchange = new NioHttpExchange(this, context, method, requestUri, protocol, requestHeaders, requestBody, keepAlive);
+        inFlight.addLast(exchange);
+        if (!keepAlive) {
+            // Anything the client sends after a closing request is ignored
+            closeAfterWrites = true;
+        }
+
+        if (context == null) {
+            respond(exchange, 404);
+            return;
+        }
+        engine.dispatch(context, exchange);
+    }
+
+    private void respondAndClose(int statusCode) {
+        keepAlive = false;
+        NioHttpExchange exchange = new NioHttpExchange(this, null, method, null, protocol, new Headers(), null, false);
+        inFlight.addLast(exchange);
+        closeAfterWrites = true;
+        readingBody = false;
+        headerBytes = null;
+        headerLength = 0;
+        respond(exchange, statusCode);
+    }
+
+    private static void respond(NioHttpExchange exchange, int statusCode) {
+        try {
+            exchange.sendResponseHeaders(statusCode, -1);
+        } catch (IOException ignored) {
+        }
+        exchange.close();
+    }
+
+    private void queueWrite(ByteBuffer bytes) {
+        if (bytes.hasRemaining()) {
+            pendingWrites.addLast(bytes);
+        }
+    }
+
+    private void writePending() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        while (!pendingWrites.isEmpty()) {
+            if (pendingWrites.peekFirst() instanceof FileRegion) {
+                FileRegion region = (FileRegion) pendingWrites.peekFirst();
+                if (!region.transferTo(channel)) {
+                    break;
+                }
+                pendingWrites.pollFirst();
+                region.close();
+                continue;
+            }
+            if (pendingWrites.peekFirst() instanceof ResponseChunk) {
+                ByteBuffer chunk = ((ResponseChunk) pendingWrites.peekFirst()).bytes;
+                if (!writeSlices(chunk)) {
+                    break;
+                }
+                pendingWrites.pollFirst();
+                engine.getChunkPool().release(chunk.array());
+                continue;
+            }
+
+            ByteBuffer head = (ByteBuffer) pendingWrites.peekFirst();
+            if (!writeSlices(head)) {
+                break;
+            }
+            pendingWrites.pollFirst();
+        }
+        lastActivity = System.currentTimeMillis();
+
+        if (pendingWrites.isEmpty() && closeAfterWrites && inFlight.isEmpty()) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    /*
+        Returns true once the whole buffer has been written, false when the socket is full
+    */
+    private boolean writeSlices(ByteBuffer bytes) throws IOException {
+        int limit = bytes.limit();
+        try {
+            while (bytes.position() < limit) {
+                bytes.limit(Math.min(limit, bytes.position() + WRITE_SLICE_SIZE));
+                channel.write(bytes);
+                if (bytes.hasRemaining()) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            bytes.limit(limit);
+        }
+    }
+
+    /*
+        Also re-evaluated by the engine for connections paused because their handler does not keep up
+        with the body, or because request bodies use up the engine's memory budget
+    */
+    void updateInterest() {
+        if (!key.isValid()) {
+            return;
+        }
+        boolean bodyBackedUp = readingBody && body.isBackedUp();
+        if (bodyBackedUp) {
+            engine.pause(this);
+        } else {
+            engine.forgetPaused(this);
+        }
+        int interest = 0;
+        if (!closeAfterWrites && inFlight.size() < MAX_PIPELINED_REQUESTS && !bodyBackedUp) {
+            interest |= SelectionKey.OP_READ;
+        }
+        if (!pendingWrites.isEmpty()) {
+            interest |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(interest);
+    }
+
+    /*
+        Part of a response body in a chunk that goes back to the engine's ChunkPool once written
+    */
+    private static class ResponseChunk {
+        private final ByteBuffer bytes;
+
+        ResponseChunk(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /*
+        A file sent with FileChannel.transferTo, which lets the kernel copy it to the socket
+    */
+    private static class FileRegion {
+        private final FileChannel file;
+        private final long length;
+        private long position = 0;
+
+        FileRegion(FileChannel file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        /*
+            Returns true once the whole file has been sent
+        */
+        boolean transferTo(SocketChannel channel) throws IOException {
+            while (position < length) {
+                long transferred = file.transferTo(position, length - position, channel);
+                if (transferred == 0) {
+                    return false;
+                }
+                position += transferred;
+            }
+            return true;
+        }
+
+        void close() {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package engine;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class NioHttpContext extends HttpContext {
+    private final String path;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final List<Filter> filters = new ArrayList<>();
+    private HttpHandler handler;
+    private Authenticator authenticator;
+
+    NioHttpContext(String path, HttpHandler handler) {
+        this.path = path;
+        this.handler = handler;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public void setHandler(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    /*
+        There is no com.sun HttpServer behind this engine
+    */
+    @Override
+    public HttpServer getServer() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public Authenticator setAuthenticator(Authenticator authenticator) {
+        Authenticator previous = this.authenticator;
+        this.authenticator = authenticator;
+        return previous;
+    }
+
+    @Override
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
+}
@@ -0,0 +1,318 @@
+package engine;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    An exchange parsed by the NIO engine. The request body streams in while the handler runs.
+    The response is buffered in chunks from the engine's ChunkPool and handed back to the selector thread
+    once the handler closes the exchange or the response body. The selector writes straight from those chunks
+    and returns each one to the pool once it is on the wire.
+    A file response is not buffered at all, the selector thread transfers it to the socket directly
+*/
+class NioHttpExchange extends HttpExchange implements FileTransferExchange {
+    private final NioConnection connection;
+    private final NioHttpContext context;
+    private final String method;
+    private final URI requestUri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final RequestBodyStream body;
+    private boolean keepAlive;
+    private InputStream requestBody;
+    private final ResponseBody responseBody = new ResponseBody();
+    private OutputStream responseStream = responseBody;
+    private int responseCode = -1;
+    private FileChannel responseFile;
+    private long responseFileLength;
+    private volatile ByteBuffer encodedHead;
+    private volatile boolean completed = false;
+
+    NioHttpExchange(NioConnection connection, NioHttpContext context, String method, URI requestUri,
+                    String protocol, Headers requestHeaders, RequestBodyStream body, boolean keepAlive) {
+        this.connection = connection;
+        this.context = context;
+        this.method = method;
+        this.requestUri = requestUri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.body = body;
+        this.requestBody = body != null ? body : new ByteArrayInputStream(new byte[0]);
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return requestUri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        complete();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseStream;
+    }
+
+    @Override
+    public void sendResponseHeaders(int responseCode, long responseLength) throws IOException {
+        if (this.responseCode != -1) {
+            throw new IOException("Response headers have already been sent");
+        }
+        this.responseCode = responseCode;
+    }
+
+    /*
+        The file is opened right away, so it can be deleted once this returns
+    */
+    @Override
+    public void sendFile(int responseCode, Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.responseFileLength = channel.size();
+            sendResponseHeaders(responseCode, responseFileLength);
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+        this.responseFile = channel;
+        complete();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream requestBody, OutputStream responseBody) {
+        if (requestBody != null) {
+            this.requestBody = requestBody;
+        }
+        if (responseBody != null) {
+            this.responseStream = responseBody;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    /*
+        The head of the response, or null when the handler gave up without sending headers
+        and the connection has to be dropped
+    */
+    ByteBuffer getEncodedHead() {
+        return encodedHead;
+    }
+
+    /*
+        The body of the response, one buffer per pooled chunk. Each chunk belongs to the caller once the exchange
+        is complete and goes back to the pool after it has been written
+    */
+    List<ByteBuffer> getResponseChunks() {
+        return responseBody.toBuffers();
+    }
+
+    /*
+        A file to send after the encoded response, or null
+    */
+    FileChannel getResponseFile() {
+        return responseFile;
+    }
+
+    long getResponseFileLength() {
+        return responseFileLength;
+    }
+
+    /*
+        For a response that is dropped instead of written
+    */
+    synchronized void closeResponseFile() {
+        if (responseFile != null) {
+            try {
+                responseFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    synchronized void complete() {
+        if (completed) {
+            return;
+        }
+        if (body != null && body.abandon()) {
+            keepAlive = false;
+        }
+        if (responseCode != -1) {
+            encodedHead = encodeHead();
+        }
+        completed = true;
+        connection.onExchangeCompleted();
+    }
+
+    private ByteBuffer encodeHead() {
+        long contentLength = responseFile == null ? responseBody.size() : responseFileLength;
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(responseCode).append(' ').append(reasonPhrase(responseCode)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                head.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        head.append("Content-Length: ").append(contentLength).append("\r\n");
+        if (!keepAlive) {
+            head.append("Connection: close\r\n");
+        }
+        head.append("\r\n");
+
+        return ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    static String reasonPhrase(int code) {
+        switch (code) {
+            case 200: return "OK";
+            case 202: return "Accepted";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            default: return "";
+        }
+    }
+
+    private class ResponseBody extends OutputStream {
+        private final List<byte[]> chunks = new ArrayList<>();
+        // Write position in the last chunk
+        private int tailLength = 0;
+        private long size = 0;
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[]{(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (completed) {
+                throw new IOException("The response is already complete");
+            }
+            size += length;
+            while (length > 0) {
+                byte[] tail = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+                if (tail == null || tailLength == tail.length) {
+                    tail = connection.getChunkPool().acquire();
+                    chunks.add(tail);
+                    tailLength = 0;
+                }
+                int copied = Math.min(length, tail.length - tailLength);
+                System.arraycopy(bytes, offset, tail, tailLength, copied);
+                tailLength += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        @Override
+        public void close() {
+            complete();
+        }
+
+        long size() {
+            return size;
+        }
+
+        List<ByteBuffer> toBuffers() {
+            List<ByteBuffer> buffers = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                byte[] chunk = chunks.get(i);
+                buffers.add(ByteBuffer.wrap(chunk, 0, i == chunks.size() - 1 ? tailLength : chunk.length));
+            }
+            return buffers;
+        }
+    }
+}
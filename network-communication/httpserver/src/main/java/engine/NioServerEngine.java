@@ -0,0 +1,323 @@
+package engine;
+
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    A single selector thread accepts, reads and writes every connection.
+    Handlers run on the configured executor, or one at a time on an engine thread when there is none,
+    the same way com.sun.net.httpserver.HttpServer behaves. They never run on the selector thread itself
+    because a handler may block reading a request body that the selector has yet to receive.
+    A failure while serving one connection closes that connection only
+*/
+public class NioServerEngine implements ServerEngine {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    // Heap chunks kept for request bodies and responses, at most 4 MiB sit idle in the pool
+    private static final int MAX_POOLED_CHUNKS = 256;
+    // Request body bytes received but not read by handlers yet, across all connections
+    private static final long MAX_BUFFERED_BODY_BYTES = 32 * 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private final int port;
+    private final long maxBodySize;
+    private final List<NioHttpContext> contexts = new ArrayList<>();
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final ChunkPool chunkPool = new ChunkPool(BUFFER_SIZE, MAX_POOLED_CHUNKS);
+    private final ConcurrentLinkedQueue<NioConnection> completedConnections = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bufferedBodyBytes = new AtomicLong();
+    // Connections not reading because of request body backpressure. Selector thread only
+    private final Set<NioConnection> pausedConnections = new HashSet<>();
+    private volatile boolean readsPaused = false;
+    private Executor executor;
+    private ExecutorService defaultExecutor;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+
+    public NioServerEngine(int port, long maxBodySize) {
+        this.port = port;
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        contexts.add(new NioHttpContext(path, handler));
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void start() throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        if (executor == null) {
+            defaultExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "nio-engine-handler-" + port));
+            executor = defaultExecutor;
+        }
+        running = true;
+        selectorThread = new Thread(this::runSelectorLoop, "nio-engine-selector-" + port);
+        selectorThread.start();
+    }
+
+    /*
+        The selector thread closes every connection and the listening channel on its way out, waiting for it
+        is what makes the stop synchronous
+    */
+    @Override
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdownNow();
+        }
+        if (selectorThread != null && selectorThread != Thread.currentThread()) {
+            try {
+                selectorThread.join();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                closeServerChannel();
+            }
+        }
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    ChunkPool getChunkPool() {
+        return chunkPool;
+    }
+
+    long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    void bodyBytesBuffered(int length) {
+        bufferedBodyBytes.addAndGet(length);
+    }
+
+    /*
+        Called from handler threads as they consume request bodies
+    */
+    void bodyBytesReleased(int length) {
+        bufferedBodyBytes.addAndGet(-length);
+        if (readsPaused) {
+            selector.wakeup();
+        }
+    }
+
+    boolean isBodyMemoryExhausted() {
+        return bufferedBodyBytes.get() >= MAX_BUFFERED_BODY_BYTES;
+    }
+
+    /*
+        Called from a handler thread that blocks on its request body, its connection may read past the memory budget
+    */
+    void onBodyReaderWaiting() {
+        if (readsPaused) {
+            selector.wakeup();
+        }
+    }
+
+    void pause(NioConnection connection) {
+        pausedConnections.add(connection);
+        readsPaused = true;
+    }
+
+    void forgetPaused(NioConnection connection) {
+        if (pausedConnections.remove(connection)) {
+            readsPaused = !pausedConnections.isEmpty();
+        }
+    }
+
+    /*
+        Longest matching path prefix wins, like com.sun.net.httpserver
+    */
+    NioHttpContext findContext(String path) {
+        NioHttpContext bestMatch = null;
+        for (NioHttpContext context : contexts) {
+            if (path != null && path.startsWith(context.getPath())
+                    && (bestMatch == null || context.getPath().length() > bestMatch.getPath().length())) {
+                bestMatch = context;
+            }
+        }
+        return bestMatch;
+    }
+
+    void dispatch(NioHttpContext context, NioHttpExchange exchange) {
+        try {
+            executor.execute(() -> {
+                try {
+                    context.getHandler().handle(exchange);
+                } catch (Throwable throwable) {
+                    throwable.printStackTrace();
+                    exchange.close();
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            try {
+                exchange.sendResponseHeaders(503, -1);
+            } catch (IOException ignored) {
+            }
+            exchange.close();
+        }
+    }
+
+    void scheduleWrite(NioConnection connection) {
+        completedConnections.add(connection);
+        selector.wakeup();
+    }
+
+    private void runSelectorLoop() {
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    handleKey(key);
+                }
+
+                NioConnection connection;
+                while ((connection = completedConnections.poll()) != null) {
+                    try {
+                        connection.collectCompletedResponses();
+                    } catch (Throwable throwable) {
+                        closeFailed(connection, throwable);
+                    }
+                }
+
+                for (NioConnection pausedConnection : new ArrayList<>(pausedConnections)) {
+                    try {
+                        pausedConnection.updateInterest();
+                    } catch (Throwable throwable) {
+                        closeFailed(pausedConnection, throwable);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= SELECT_TIMEOUT_MILLIS) {
+                    closeIdleConnections(now - IDLE_TIMEOUT_MILLIS);
+                    lastIdleCheck = now;
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isWritable()) {
+                connection.onWritable();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+        } catch (Throwable throwable) {
+            closeFailed(connection, throwable);
+        }
+    }
+
+    /*
+        An IOException is the client going away, anything else is a bug worth a stack trace,
+        but either way only this connection is lost
+    */
+    private void closeFailed(NioConnection connection, Throwable throwable) {
+        if (!(throwable instanceof IOException)) {
+            throwable.printStackTrace();
+        }
+        try {
+            connection.close();
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioConnection(this, channel, key));
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private void closeIdleConnections(long idleSince) {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection && ((NioConnection) attachment).isIdleSince(idleSince)) {
+                ((NioConnection) attachment).close();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection) {
+                ((NioConnection) key.attachment()).close();
+            }
+        }
+        closeServerChannel();
+        try {
+            selector.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private void closeServerChannel() {
+        try {
+            serverChannel.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+}
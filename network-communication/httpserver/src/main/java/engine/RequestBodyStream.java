@@ -0,0 +1,161 @@
+package engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/*
+    The body of a request, handed to the handler while it is still arriving.
+    The selector thread appends what it reads from the socket and the handler thread consumes it,
+    so the heap holds only the part of the body that was received but not read yet.
+    Bytes are copied into chunks taken from the engine's ChunkPool as they arrive, never allocated
+    for the declared Content-Length up front, and each chunk goes back to the pool once it has been read
+*/
+class RequestBodyStream extends InputStream {
+    // Beyond this the selector stops reading the socket until the handler catches up
+    static final int MAX_BUFFERED_BYTES = 64 * 1024;
+    // A body the handler did not read is drained up to this size, anything larger closes the connection
+    private static final long MAX_DRAINED_BYTES = 1024 * 1024;
+
+    private final NioServerEngine engine;
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private long unreceived;
+    // Read position in the first chunk and write position in the last one
+    private int chunkOffset = 0;
+    private int tailLength = 0;
+    private int buffered = 0;
+    private boolean readerWaiting = false;
+    private boolean discarding = false;
+    private boolean aborted = false;
+
+    RequestBodyStream(NioServerEngine engine, long length) {
+        this.engine = engine;
+        this.unreceived = length;
+    }
+
+    /*
+        Selector thread. Takes length bytes from the buffer
+    */
+    synchronized void receive(ByteBuffer buffer, int length) {
+        unreceived -= length;
+        if (discarding) {
+            buffer.position(buffer.position() + length);
+        } else {
+            buffered += length;
+            engine.bodyBytesBuffered(length);
+            while (length > 0) {
+                byte[] tail = chunks.peekLast();
+                if (tail == null || tailLength == tail.length) {
+                    tail = engine.getChunkPool().acquire();
+                    chunks.addLast(tail);
+                    tailLength = 0;
+                }
+                int copied = Math.min(length, tail.length - tailLength);
+                buffer.get(tail, tailLength, copied);
+                tailLength += copied;
+                length -= copied;
+            }
+        }
+        notifyAll();
+    }
+
+    /*
+        Selector thread. True when the selector should stop reading the socket for now: the handler has
+        enough unread bytes, or all connections together do and this handler is not waiting for more
+    */
+    synchronized boolean isBackedUp() {
+        if (discarding || aborted) {
+            return false;
+        }
+        return buffered >= MAX_BUFFERED_BYTES || (engine.isBodyMemoryExhausted() && !readerWaiting);
+    }
+
+    /*
+        Selector thread, when the connection goes away before the whole body arrived
+    */
+    synchronized void abort() {
+        aborted = true;
+        release();
+        notifyAll();
+    }
+
+    /*
+        Handler thread, once the exchange is complete. What the handler left unread is dropped and
+        the rest of the body is discarded as it arrives. Returns true when that rest is too large
+        to drain, the connection is then closed after the response
+    */
+    synchronized boolean abandon() {
+        discarding = true;
+        release();
+        return unreceived > MAX_DRAINED_BYTES;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (buffered == 0) {
+            if (aborted) {
+                throw new IOException("Connection closed before the request body was complete");
+            }
+            if (unreceived == 0 || discarding) {
+                return -1;
+            }
+            readerWaiting = true;
+            engine.onBodyReaderWaiting();
+            try {
+                wait();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the request body");
+            } finally {
+                readerWaiting = false;
+            }
+        }
+
+        byte[] chunk = chunks.peekFirst();
+        int chunkEnd = chunks.size() == 1 ? tailLength : chunk.length;
+        int read = Math.min(length, chunkEnd - chunkOffset);
+        System.arraycopy(chunk, chunkOffset, bytes, offset, read);
+        chunkOffset += read;
+        if (chunkOffset == chunkEnd) {
+            chunks.pollFirst();
+            engine.getChunkPool().release(chunk);
+            chunkOffset = 0;
+            if (chunks.isEmpty()) {
+                tailLength = 0;
+            }
+        }
+        buffered -= read;
+        engine.bodyBytesReleased(read);
+        return read;
+    }
+
+    @Override
+    public synchronized int available() {
+        return buffered;
+    }
+
+    private void release() {
+        int released = buffered;
+        for (byte[] chunk : chunks) {
+            engine.getChunkPool().release(chunk);
+        }
+        chunks.clear();
+        chunkOffset = 0;
+        tailLength = 0;
+        buffered = 0;
+        if (released > 0) {
+            engine.bodyBytesReleased(released);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package engine;
+
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/*
+    The HTTP implementation behind WebServer. Handlers are plain com.sun.net.httpserver handlers,
+    so the same handler code runs on every engine
+*/
+public interface ServerEngine {
+    void createContext(String path, HttpHandler handler);
+
+    void setExecutor(Executor executor);
+
+    void start() throws IOException;
+
+    /*
+        Returns once the listening socket is closed, so the port can be bound again right away
+    */
+    void stop();
+}
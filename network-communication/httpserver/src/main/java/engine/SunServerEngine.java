@@ -0,0 +1,50 @@
+package engine;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/*
+    The JDK built-in server, one executor thread per exchange
+*/
+public class SunServerEngine implements ServerEngine {
+    private final int port;
+    private final Map<String, HttpHandler> contexts = new LinkedHashMap<>();
+    private Executor executor;
+    private HttpServer server;
+
+    public SunServerEngine(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler) {
+        contexts.put(path, handler);
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        for (Map.Entry<String, HttpHandler> context : contexts.entrySet()) {
+            server.createContext(context.getKey()).setHandler(context.getValue());
+        }
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package jobs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    A /task request that runs in the background. Results above the spill threshold are written to
+    a memory-mapped temporary file instead of the heap and kept there until the client picks them up or the job expires.
+    The result fields are guarded by the job itself because a poll may race the cleaner discarding the job
+*/
+public class Job {
+    private final String id;
+    private final boolean binaryResult;
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private byte[] result;
+    private MappedByteBuffer mappedResult;
+    private Path spillFile;
+    private volatile Throwable failure;
+    private volatile long completedAt;
+
+    Job(String id, boolean binaryResult) {
+        this.id = id;
+        this.binaryResult = binaryResult;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isBinaryResult() {
+        return binaryResult;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /*
+        The spilled result file, or null when the result is kept on the heap or was discarded
+    */
+    public synchronized Path getSpillFile() {
+        return spillFile;
+    }
+
+    /*
+        A read-only view of the result that does not copy it, or null once the job was discarded
+    */
+    public synchronized ByteBuffer getResult() {
+        if (mappedResult != null) {
+            return mappedResult.asReadOnlyBuffer();
+        }
+        if (result != null) {
+            return ByteBuffer.wrap(result).asReadOnlyBuffer();
+        }
+        return null;
+    }
+
+    long getCompletedAt() {
+        return completedAt;
+    }
+
+    void markRunning() {
+        status = JobStatus.RUNNING;
+    }
+
+    void complete(ResultSpool spool) throws IOException {
+        synchronized (this) {
+            Path file = spool.getFile();
+            if (file != null) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    this.mappedResult = channel.map(FileChannel.MapMode.READ_ONLY, 0, spool.length());
+                }
+                this.spillFile = file;
+            } else {
+                this.result = spool.toByteArray();
+            }
+        }
+        this.completedAt = System.currentTimeMillis();
+        this.status = JobStatus.DONE;
+    }
+
+    void fail(Throwable failure) {
+        this.failure = failure;
+        this.completedAt = System.currentTimeMillis();
+        this.status = JobStatus.FAILED;
+    }
+
+    synchronized void discard() {
+        result = null;
+        mappedResult = null;
+        if (spillFile != null) {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+            spillFile = null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package jobs;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Runs background jobs on a fixed pool with a bounded queue.
+    Finished jobs are kept for retentionMillis so the client can fetch them, then discarded.
+    At most maxRetainedJobs are kept, the job that finished first makes room for a new one
+*/
+public class JobManager {
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final long spillThreshold;
+    private final long retentionMillis;
+    private final int maxRetainedJobs;
+
+    public JobManager(int threads, int queueCapacity, long spillThreshold, long retentionMillis, int maxRetainedJobs) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+        this.spillThreshold = spillThreshold;
+        this.retentionMillis = retentionMillis;
+        this.maxRetainedJobs = maxRetainedJobs;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long cleanupPeriod = Math.max(1000, retentionMillis / 10);
+        cleaner.scheduleAtFixedRate(this::discardExpiredJobs, cleanupPeriod, cleanupPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+        Throws RejectedExecutionException when the job queue is full, or when every retained job is still pending
+    */
+    public synchronized Job submit(ResultWriter computation, boolean binaryResult) {
+        if (jobs.size() >= maxRetainedJobs && !discardOldestFinishedJob()) {
+            throw new RejectedExecutionException("All " + maxRetainedJobs + " retained jobs are pending");
+        }
+        Job job = new Job(UUID.randomUUID().toString(), binaryResult);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, computation));
+        } catch (RejectedExecutionException exception) {
+            jobs.remove(job.getId());
+            throw exception;
+        }
+        return job;
+    }
+
+    public Job get(String id) {
+        return jobs.get(id);
+    }
+
+    public int getQueuedJobs() {
+        return executor.getQueue().size();
+    }
+
+    public int getRetainedJobs() {
+        return jobs.size();
+    }
+
+    /*
+        Running jobs are interrupted, the call returns once their threads are gone or after timeoutMillis
+    */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdownNow();
+        cleaner.shutdownNow();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        for (Job job : jobs.values()) {
+            job.discard();
+        }
+        jobs.clear();
+    }
+
+    private void run(Job job, ResultWriter computation) {
+        job.markRunning();
+        ResultSpool spool = new ResultSpool(job.getId(), spillThreshold);
+        try {
+            try {
+                computation.writeTo(spool);
+            } finally {
+                spool.close();
+            }
+            job.complete(spool);
+        } catch (Throwable throwable) {
+            spool.delete();
+            job.fail(throwable);
+        }
+    }
+
+    private boolean discardOldestFinishedJob() {
+        Job oldest = null;
+        for (Job job : jobs.values()) {
+            JobStatus status = job.getStatus();
+            if ((status == JobStatus.DONE || status == JobStatus.FAILED)
+                    && (oldest == null || job.getCompletedAt() < oldest.getCompletedAt())) {
+                oldest = job;
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+        jobs.remove(oldest.getId());
+        oldest.discard();
+        return true;
+    }
+
+    private void discardExpiredJobs() {
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            JobStatus status = job.getStatus();
+            if ((status == JobStatus.DONE || status == JobStatus.FAILED) && job.getCompletedAt() < expiredBefore) {
+                iterator.remove();
+                job.discard();
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package jobs;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
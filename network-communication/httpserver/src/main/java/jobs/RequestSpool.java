@@ -0,0 +1,71 @@
+package jobs;
+
+import computation.PayloadTooLargeException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+    Holds the body of an async request until its job runs. Small bodies stay on the heap,
+    larger ones are copied to a temporary file in fixed-size chunks
+*/
+public class RequestSpool {
+    private static final int IN_MEMORY_LIMIT = 64 * 1024;
+
+    private final byte[] body;
+    private final Path file;
+
+    private RequestSpool(byte[] body, Path file) {
+        this.body = body;
+        this.file = file;
+    }
+
+    public static RequestSpool spool(InputStream inputStream, long maxBodySize) throws IOException {
+        // One byte more than the in-memory limit tells whether the body fits
+        byte[] buffer = new byte[IN_MEMORY_LIMIT + 1];
+        int length = inputStream.readNBytes(buffer, 0, buffer.length);
+        if (length <= IN_MEMORY_LIMIT) {
+            if (length > maxBodySize) {
+                throw new PayloadTooLargeException("Request body is larger than " + maxBodySize + " bytes");
+            }
+            byte[] body = new byte[length];
+            System.arraycopy(buffer, 0, body, 0, length);
+            return new RequestSpool(body, null);
+        }
+
+        Path file = Files.createTempFile("job-", ".body");
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            long total = length;
+            outputStream.write(buffer, 0, length);
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBodySize) {
+                    throw new PayloadTooLargeException("Request body is larger than " + maxBodySize + " bytes");
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        } catch (IOException exception) {
+            Files.deleteIfExists(file);
+            throw exception;
+        }
+        return new RequestSpool(null, file);
+    }
+
+    public InputStream open() throws IOException {
+        return file == null ? new ByteArrayInputStream(body) : Files.newInputStream(file);
+    }
+
+    public void delete() {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+}
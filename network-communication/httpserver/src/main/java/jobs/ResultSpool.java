@@ -0,0 +1,83 @@
+package jobs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+    Collects the result of a job while it is encoded. It stays on the heap up to the spill threshold,
+    past that everything is written to a temporary file, so a large result is never held in memory as a whole
+*/
+class ResultSpool extends OutputStream {
+    private final String jobId;
+    private final long spillThreshold;
+    private ByteArrayOutputStream heap = new ByteArrayOutputStream();
+    private OutputStream fileStream;
+    private Path file;
+    private long length = 0;
+
+    ResultSpool(String jobId, long spillThreshold) {
+        this.jobId = jobId;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        if (fileStream == null && length + count > spillThreshold) {
+            spill();
+        }
+        if (fileStream != null) {
+            fileStream.write(bytes, offset, count);
+        } else {
+            heap.write(bytes, offset, count);
+        }
+        length += count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileStream != null) {
+            fileStream.close();
+        }
+    }
+
+    /*
+        The temporary file holding the result, or null when it stayed on the heap
+    */
+    Path getFile() {
+        return file;
+    }
+
+    byte[] toByteArray() {
+        return heap.toByteArray();
+    }
+
+    long length() {
+        return length;
+    }
+
+    void delete() {
+        if (file != null) {
+            try {
+                close();
+                Files.deleteIfExists(file);
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile("job-" + jobId + "-", ".result");
+        fileStream = Files.newOutputStream(file);
+        heap.writeTo(fileStream);
+        heap = null;
+    }
+}
@@ -0,0 +1,10 @@
+package jobs;
+
+import java.io.OutputStream;
+
+/*
+    The work of a job, it writes the encoded result to the stream as it produces it
+*/
+public interface ResultWriter {
+    void writeTo(OutputStream outputStream) throws Exception;
+}
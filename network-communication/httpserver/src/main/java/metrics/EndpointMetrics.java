@@ -0,0 +1,45 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EndpointMetrics {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /*
+        Marks the start of a request and returns the timestamp to pass to end()
+    */
+    public long begin() {
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void end(long startNanos) {
+        inFlight.decrementAndGet();
+        latency.record(System.nanoTime() - startNanos);
+    }
+
+    public void reject() {
+        rejected.incrementAndGet();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
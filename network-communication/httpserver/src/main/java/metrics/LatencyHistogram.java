@@ -0,0 +1,90 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Log-linear histogram of nanosecond latencies. Each power of two is split into 32 linear buckets,
+    so any reported value is within about 3% of the recorded one.
+    Recording is a single atomic increment on a preallocated array, with no locks and no allocation
+*/
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+
+        long currentMax = maxNanos.get();
+        while (value > currentMax && !maxNanos.compareAndSet(currentMax, value)) {
+            currentMax = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : totalNanos.get() / count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /*
+        Returns the value below which the given fraction of the recordings fall, 0 when nothing was recorded.
+        The buckets are read one by one while recording continues, so the result is approximate under load
+    */
+    public long valueAtQuantile(double quantile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(bucketMidpoint(index), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        long lowerBound = (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowerBound + ((1L << shift) >>> 1);
+    }
+}
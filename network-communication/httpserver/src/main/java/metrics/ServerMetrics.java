@@ -0,0 +1,100 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/*
+    Per-endpoint counters, per-phase latency histograms, and sampled counters and gauges, rendered in the Prometheus text format
+*/
+public class ServerMetrics {
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> phases = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> counters = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+
+    public EndpointMetrics endpoint(String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, name -> new EndpointMetrics());
+    }
+
+    public LatencyHistogram phase(String phase) {
+        return phases.computeIfAbsent(phase, name -> new LatencyHistogram());
+    }
+
+    /*
+        For a value that only ever grows, so Prometheus rate() and increase() treat it correctly
+    */
+    public synchronized void registerCounter(String name, LongSupplier supplier) {
+        counters.put(name, supplier);
+    }
+
+    public synchronized void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public synchronized String scrape() {
+        StringBuilder output = new StringBuilder(2048);
+
+        output.append("# TYPE webserver_requests_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> endpoint : endpoints.entrySet()) {
+            appendSample(output, "webserver_requests_total", "endpoint", endpoint.getKey(), endpoint.getValue().getRequests());
+        }
+        output.append("# TYPE webserver_rejected_requests_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> endpoint : endpoints.entrySet()) {
+            appendSample(output, "webserver_rejected_requests_total", "endpoint", endpoint.getKey(), endpoint.getValue().getRejected());
+        }
+        output.append("# TYPE webserver_in_flight_requests gauge\n");
+        for (Map.Entry<String, EndpointMetrics> endpoint : endpoints.entrySet()) {
+            appendSample(output, "webserver_in_flight_requests", "endpoint", endpoint.getKey(), endpoint.getValue().getInFlight());
+        }
+
+        output.append("# TYPE webserver_request_latency_seconds summary\n");
+        for (Map.Entry<String, EndpointMetrics> endpoint : endpoints.entrySet()) {
+            appendSummary(output, "webserver_request_latency_seconds", "endpoint", endpoint.getKey(), endpoint.getValue().getLatency());
+        }
+
+        output.append("# HELP webserver_task_phase_latency_seconds Time spent in each /task phase. ")
+                .append("read_parse includes the multiplication in SEQUENTIAL mode, where factors are multiplied as they are read. ")
+                .append("In PRODUCT_TREE mode the subtrees are multiplied on the pool while reading continues, ")
+                .append("so multiply only covers the work left once the last factor was read\n");
+        output.append("# TYPE webserver_task_phase_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> phase : phases.entrySet()) {
+            appendSummary(output, "webserver_task_phase_latency_seconds", "phase", phase.getKey(), phase.getValue());
+        }
+
+        for (Map.Entry<String, LongSupplier> counter : counters.entrySet()) {
+            appendSampled(output, counter.getKey(), "counter", counter.getValue());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            appendSampled(output, gauge.getKey(), "gauge", gauge.getValue());
+        }
+
+        return output.toString();
+    }
+
+    private static void appendSummary(StringBuilder output, String name, String labelName, String labelValue, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            output.append(name).append('{').append(labelName).append("=\"").append(labelValue)
+                    .append("\",quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.valueAtQuantile(quantile) / NANOS_PER_SECOND).append('\n');
+        }
+        output.append(name).append("_sum{").append(labelName).append("=\"").append(labelValue).append("\"} ")
+                .append(histogram.getTotalNanos() / NANOS_PER_SECOND).append('\n');
+        output.append(name).append("_count{").append(labelName).append("=\"").append(labelValue).append("\"} ")
+                .append(histogram.getCount()).append('\n');
+    }
+
+    private static void appendSampled(StringBuilder output, String name, String type, LongSupplier supplier) {
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        output.append(name).append(' ').append(supplier.getAsLong()).append('\n');
+    }
+
+    private static void appendSample(StringBuilder output, String name, String labelName, String labelValue, long value) {
+        output.append(name).append('{').append(labelName).append("=\"").append(labelValue).append("\"} ")
+                .append(value).append('\n');
+    }
+}